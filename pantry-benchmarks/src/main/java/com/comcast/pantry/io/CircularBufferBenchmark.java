@@ -0,0 +1,112 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the single producer/single consumer throughput of the lock based
+ * {@link CircularBuffer} against the lock-free {@link SpscCircularBuffer}. The benchmark thread is
+ * the producer and a dedicated thread drains the buffer for the whole trial, so the producer only
+ * ever waits on the consumer and never on JMH. Multiply the reported ops/s by the chunk size to get
+ * bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircularBufferBenchmark {
+
+    @Param({ "locked", "spsc" })
+    public String impl;
+
+    @Param({ "64", "1024", "16384" })
+    public int chunkSize;
+
+    @Param({ "1048576" })
+    public int bufferSize;
+
+    private ByteRing ring;
+    private byte[] chunk;
+    private Thread consumer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("spsc".equals(impl)) {
+            ring = new SpscCircularBuffer(bufferSize, true);
+        } else {
+            ring = new CircularBuffer(bufferSize, true);
+        }
+
+        chunk = new byte[chunkSize];
+        consumer = new Thread(new Drain(ring, chunkSize), "circular-buffer-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws InterruptedException {
+        ring.close();
+        consumer.join();
+    }
+
+    @Benchmark
+    public void write() throws InterruptedIOException {
+        ring.write(chunk);
+    }
+
+    /**
+     * Reads from the ring until it is closed.
+     */
+    static class Drain implements Runnable {
+
+        private final ByteRing ring;
+        private final byte[] sink;
+
+        Drain(ByteRing ring, int chunkSize) {
+            this.ring = ring;
+            this.sink = new byte[chunkSize];
+        }
+
+        public void run() {
+            try {
+                while (ring.read(sink) != -1) {
+                    // keep draining
+                }
+            } catch (InterruptedIOException e) {
+                // the trial is over
+            }
+        }
+    }
+}
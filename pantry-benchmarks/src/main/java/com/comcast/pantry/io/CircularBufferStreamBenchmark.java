@@ -0,0 +1,100 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a {@link CircularBuffer} used through its stream adapters, with the
+ * benchmark thread writing through a {@link CircularBufferOutputStream} and a dedicated thread
+ * reading through a {@link CircularBufferInputStream}. A chunk size of one writes single bytes,
+ * which is how the adapters are used behind a writer that does not buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircularBufferStreamBenchmark {
+
+    @Param({ "1", "64", "4096" })
+    public int chunkSize;
+
+    @Param({ "65536" })
+    public int bufferSize;
+
+    private CircularBuffer buffer;
+    private OutputStream out;
+    private byte[] chunk;
+    private Thread consumer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        buffer = new CircularBuffer(bufferSize, true);
+        out = new CircularBufferOutputStream(buffer);
+        chunk = new byte[chunkSize];
+
+        final InputStream in = new CircularBufferInputStream(buffer);
+        consumer = new Thread(new Runnable() {
+            public void run() {
+                byte[] sink = new byte[4096];
+                try {
+                    while (in.read(sink) != -1) {
+                        // keep draining
+                    }
+                } catch (IOException e) {
+                    // the trial is over
+                }
+            }
+        }, "circular-buffer-stream-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws InterruptedException {
+        buffer.close();
+        consumer.join();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        if (chunkSize == 1) {
+            out.write(chunk[0]);
+        } else {
+            out.write(chunk);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of {@link CircularQueue#add(Object)} on a full queue, where every add also
+ * evicts the oldest value, and of {@link CircularQueue#get(long)} walking the retained range.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircularQueueBenchmark {
+
+    @Param({ "1024", "65536" })
+    public int size;
+
+    private CircularQueue<String> queue;
+    private String[] values;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        queue = new CircularQueue<String>(size);
+        values = new String[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = "line " + i;
+            queue.add(values[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean add() {
+        next = (next + 1) % size;
+        return queue.add(values[next]);
+    }
+
+    @Benchmark
+    public String get() {
+        next = (next + 1) % size;
+        return queue.get(queue.getDataStartIndex() + next);
+    }
+}
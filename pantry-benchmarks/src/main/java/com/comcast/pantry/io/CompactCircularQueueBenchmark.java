@@ -0,0 +1,171 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a full {@link CompactCircularQueue} against a full <code>CircularQueue&lt;String&gt;</code>
+ * of the same lines: the latency of <code>add</code> and <code>get</code>, and, in the
+ * <code>heapBytesPerLine</code> secondary result of every benchmark, the heap each retained line
+ * costs, measured as the growth of the used heap after a full collection divided by the number of
+ * lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactCircularQueueBenchmark {
+
+    @Param({ "string", "compact" })
+    public String impl;
+
+    @Param({ "40", "120" })
+    public int lineLength;
+
+    @Param({ "20000" })
+    public int size;
+
+    private Queue queue;
+    private String[] values;
+    private int next;
+    private long heapBytesPerLine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        values = new String[size];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            line.setLength(0);
+            line.append(i).append(' ');
+            while (line.length() < lineLength) {
+                line.append((char) ('a' + line.length() % 26));
+            }
+            values[i] = line.toString();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        queue = null;
+        long before = usedHeap();
+
+        queue = "compact".equals(impl) ? new CompactQueue(size, lineLength)
+                : new StringQueue(size);
+        for (int i = 0; i < size; i++) {
+            /* Copy the line, as a line read from a stream would be, so it is not shared */
+            queue.add(new String(values[i].toCharArray()));
+        }
+
+        heapBytesPerLine = (usedHeap() - before) / size;
+    }
+
+    @Benchmark
+    public boolean add(Footprint footprint) {
+        footprint.heapBytesPerLine = heapBytesPerLine;
+        next = (next + 1) % size;
+        return queue.add(values[next]);
+    }
+
+    @Benchmark
+    public String get(Footprint footprint) {
+        footprint.heapBytesPerLine = heapBytesPerLine;
+        next = (next + 1) % size;
+        return queue.get(next);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * The heap per line of the queue filled for the current iteration, reported next to the
+     * latency. JMH clears the counters after the iteration setup, so the benchmarks copy the
+     * measurement in.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+
+        public long heapBytesPerLine;
+    }
+
+    private interface Queue {
+
+        boolean add(String value);
+
+        /** Get the <code>n</code>th value counted from the oldest */
+        String get(int n);
+    }
+
+    private static class StringQueue implements Queue {
+
+        private final CircularQueue<String> queue;
+
+        StringQueue(int size) {
+            queue = new CircularQueue<String>(size);
+        }
+
+        public boolean add(String value) {
+            return queue.add(value);
+        }
+
+        public String get(int n) {
+            return queue.get(queue.getDataStartIndex() + n);
+        }
+    }
+
+    private static class CompactQueue implements Queue {
+
+        private final CompactCircularQueue queue;
+
+        CompactQueue(int size, int lineLength) {
+            /* Leave room for the lines' number prefixes to grow */
+            queue = new CompactCircularQueue(size, size * (lineLength + 8));
+        }
+
+        public boolean add(String value) {
+            return queue.add(value);
+        }
+
+        public String get(int n) {
+            return queue.get(queue.getDataStartIndex() + n);
+        }
+    }
+}
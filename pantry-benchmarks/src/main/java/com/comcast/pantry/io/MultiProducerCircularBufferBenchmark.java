@@ -0,0 +1,100 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how record throughput scales with the number of writers sharing one buffer, comparing
+ * the lock based {@link CircularBuffer}, with and without a fair lock, against the claim-and-publish
+ * {@link MultiProducerCircularBuffer}. Every benchmark thread is a writer and a dedicated thread
+ * drains the buffer, so run with <code>-t 1</code>, <code>-t 2</code>, ... <code>-t N</code> to
+ * see the scaling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiProducerCircularBufferBenchmark {
+
+    @Param({ "locked", "fair", "multiProducer" })
+    public String impl;
+
+    @Param({ "128", "4096" })
+    public int recordSize;
+
+    @Param({ "1048576" })
+    public int bufferSize;
+
+    private ByteRing ring;
+    private Thread consumer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("multiProducer".equals(impl)) {
+            ring = new MultiProducerCircularBuffer(bufferSize, true);
+        } else if ("fair".equals(impl)) {
+            ring = new CircularBuffer(bufferSize, true, WaitStrategy.BLOCKING, true);
+        } else {
+            ring = new CircularBuffer(bufferSize, true);
+        }
+
+        consumer = new Thread(new CircularBufferBenchmark.Drain(ring, 64 * 1024),
+                "circular-buffer-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws InterruptedException {
+        ring.close();
+        consumer.join();
+    }
+
+    @State(Scope.Thread)
+    public static class Record {
+
+        public byte[] bytes;
+
+        @Setup
+        public void setup(MultiProducerCircularBufferBenchmark benchmark) {
+            bytes = new byte[benchmark.recordSize];
+        }
+    }
+
+    @Benchmark
+    public void write(Record record) throws InterruptedIOException {
+        ring.write(record.bytes);
+    }
+}
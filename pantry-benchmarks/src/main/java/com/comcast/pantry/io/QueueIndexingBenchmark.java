@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what finding a value by absolute index costs: the range check and storage lookup the
+ * circular queues did before their indexes became <code>long</code>s, an <code>int</code>
+ * remainder by the queue size into an array of that size, against the mask by the power of two
+ * storage size they use now into an array of that size, and the resulting
+ * {@link CircularQueue#get(long)}. Both layouts hold the same lines, so every variant returns the
+ * same line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueIndexingBenchmark {
+
+    @Param({ "20000" })
+    public int size;
+
+    private CircularQueue<String> queue;
+    private String[] byModulo;
+    private String[] byMask;
+    private int mask;
+    private int dataStart;
+    private int dataEnd;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        queue = new CircularQueue<String>(size);
+        byModulo = new String[size];
+        byMask = new String[queue.getStorageSize()];
+        mask = byMask.length - 1;
+        for (int i = 0; i < 3 * size + 7; i++) {
+            String line = "line " + i;
+            queue.add(line);
+            byModulo[i % size] = line;
+            byMask[i & mask] = line;
+        }
+        dataStart = (int) queue.getDataStartIndex();
+        dataEnd = (int) queue.getDataEndIndex();
+    }
+
+    @Benchmark
+    public String modulo() {
+        int index = dataStart + advance();
+        if ((index < dataStart) || (index > dataEnd)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return byModulo[index % size];
+    }
+
+    @Benchmark
+    public String mask() {
+        int index = dataStart + advance();
+        if ((index < dataStart) || (index > dataEnd)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return byMask[index & mask];
+    }
+
+    @Benchmark
+    public String get() {
+        return queue.get(dataStart + advance());
+    }
+
+    /**
+     * Step to the next value of the queue, wrapping with a compare rather than a remainder so that
+     * the variants differ only in how they index.
+     */
+    private int advance() {
+        if (++next == size) {
+            next = 0;
+        }
+        return next;
+    }
+}
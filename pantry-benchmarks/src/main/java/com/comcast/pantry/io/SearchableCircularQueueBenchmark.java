@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures searching a full window of log lines in a {@link SearchableCircularQueue}, with and
+ * without its trigram index: a selective substring, a common one, and a regular expression, plus
+ * the cost of <code>add</code> when every line added deletes the oldest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchableCircularQueueBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean indexed;
+
+    @Param({ "20000" })
+    public int size;
+
+    private SearchableCircularQueue queue;
+    private String[] lines;
+    private Pattern pattern;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42L);
+        lines = new String[size];
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(100) == 0) {
+                lines[i] = "2015-06-01 12:00:00,000 ERROR timeout connecting to db-"
+                        + random.nextInt(50) + " after " + random.nextInt(5000) + " ms";
+            } else {
+                lines[i] = "2015-06-01 12:00:00,000 INFO request " + i + " served in "
+                        + random.nextInt(200) + " ms";
+            }
+        }
+
+        queue = new SearchableCircularQueue(size, indexed);
+        for (String line : lines) {
+            queue.add(line);
+        }
+        pattern = Pattern.compile("served in \\d{3} ms");
+    }
+
+    @Benchmark
+    public long[] searchSelective() {
+        return queue.search("db-17 ");
+    }
+
+    @Benchmark
+    public long[] searchCommon() {
+        return queue.search("ERROR");
+    }
+
+    @Benchmark
+    public long[] searchRegex() {
+        return queue.search(pattern);
+    }
+
+    @Benchmark
+    public boolean add() {
+        next = (next + 1) % size;
+        return queue.add(lines[next]);
+    }
+}
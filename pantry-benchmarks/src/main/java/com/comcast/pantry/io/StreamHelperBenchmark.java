@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link StreamHelper#copy(java.io.InputStream, OutputStream, int)}
+ * across copy buffer sizes, from an in-memory stream to a stream that discards what it is given,
+ * so only the copy loop itself is measured. Multiply the reported ops/s by the payload size to get
+ * bytes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamHelperBenchmark {
+
+    @Param({ "512", "8192", "65536" })
+    public int bufferSize;
+
+    @Param({ "1048576" })
+    public int payloadSize;
+
+    private StreamHelper helper;
+    private byte[] payload;
+    private Discard out;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        helper = new StreamHelper();
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+        out = new Discard();
+    }
+
+    @Benchmark
+    public long copy() throws IOException {
+        helper.copy(new ByteArrayInputStream(payload), out, bufferSize);
+        return out.count;
+    }
+
+    /**
+     * An output stream that only counts what is written to it.
+     */
+    static class Discard extends OutputStream {
+
+        long count;
+
+        public void write(int b) {
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the hand-off latency of a {@link CircularBuffer} under each {@link WaitStrategy}. The
+ * benchmark thread writes a small message into one buffer and waits for an echo thread to copy it
+ * back through a second buffer, so every sample is a round trip of two hand-offs to a thread that
+ * was waiting on an empty buffer. JMH reports the samples as a histogram with percentiles.
+ * <p>
+ * The polling strategies need a core each for the benchmark and the echo thread; on fewer cores
+ * they mostly measure the scheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaitStrategyBenchmark {
+
+    @Param({ "BLOCKING", "BUSY_SPIN", "SPIN_YIELD", "PARK" })
+    public WaitStrategy strategy;
+
+    @Param({ "64" })
+    public int messageSize;
+
+    private CircularBuffer ping;
+    private CircularBuffer pong;
+    private byte[] message;
+    private byte[] reply;
+    private Thread echo;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ping = new CircularBuffer(4096, false, strategy);
+        pong = new CircularBuffer(4096, false, strategy);
+        message = new byte[messageSize];
+        reply = new byte[messageSize];
+
+        echo = new Thread(new Echo(ping, pong, messageSize), "circular-buffer-echo");
+        echo.setDaemon(true);
+        echo.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws InterruptedException {
+        ping.close();
+        pong.close();
+        echo.join();
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws InterruptedIOException {
+        ping.write(message);
+        pong.read(reply);
+        return reply;
+    }
+
+    /**
+     * Copies every message from one buffer to the other until the first is closed.
+     */
+    static class Echo implements Runnable {
+
+        private final ByteRing in;
+        private final ByteRing out;
+        private final byte[] message;
+
+        Echo(ByteRing in, ByteRing out, int messageSize) {
+            this.in = in;
+            this.out = out;
+            this.message = new byte[messageSize];
+        }
+
+        public void run() {
+            try {
+                while (in.read(message) != -1) {
+                    out.write(message);
+                }
+            } catch (InterruptedIOException e) {
+                // the trial is over
+            } catch (IllegalStateException e) {
+                // the trial is over
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The index bookkeeping shared by the circular queues. The queue is a FIFO: deletions are done from
+ * the head/start and insertions at the tail/end, and once the queue is full every insertion deletes
+ * the oldest value.
+ * <p>
+ * Every value has an absolute index, counted from the first value ever inserted, so a value can be
+ * looked up by the same index for as long as it is in the queue. The indexes are <code>long</code>s,
+ * so a queue fed a high-volume stream for years never runs out of them.
+ * <p>
+ * Subclasses provide the storage: an array of {@link #getStorageSize()} elements, which is
+ * {@link #getMaxSize()} rounded up to a power of two, so that the value at absolute index
+ * <code>i</code> is found at storage index {@link #storageIndex(long)}, <code>i</code> masked by
+ * the capacity, without a division.
+ */
+public abstract class AbstractCircularQueue {
+
+    /** The size used when none is given */
+    public static final int DEFAULT_MAX_SIZE = 20000;
+
+    /** The largest size a queue can have, so its storage can still be an array */
+    public static final int MAX_SIZE = 1 << 30;
+
+    private static Logger logger = Logger.getLogger(AbstractCircularQueue.class);
+
+    /**
+     * <P>
+     * Maintains the actual index of the data. That is, it keeps track of what
+     * values could have possibly been overwritten. Example if we have a queue
+     * of size 10 (index 0-9) and we add 15 lines. The actual range of valid data will now
+     * be 5-14 where {@link #dataStart} will represent 5 and {@link #dataEnd} will represent 14.
+     * <p>
+     */
+    private long dataStart;
+    private long dataEnd;
+
+    private int maxSize;
+
+    /** The storage index mask: the capacity of the storage less one */
+    private int mask;
+
+    /**
+     * The number of times values have been inserted or deleted, so iterators can detect that the
+     * queue changed underneath them.
+     */
+    protected int modCount;
+
+    /**
+     * Create a circular queue with desired size
+     *
+     * @param size
+     *            the most values the queue holds
+     * @throws IllegalArgumentException
+     *             if the size is not positive or larger than {@link #MAX_SIZE}
+     */
+    protected AbstractCircularQueue(int size) {
+        if ((size <= 0) || (size > MAX_SIZE)) {
+            throw new IllegalArgumentException("Invalid queue size: " + size);
+        }
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        maxSize = size;
+        mask = capacity - 1;
+        init();
+    }
+
+    /**
+     * Allocate storage for <code>size</code> values, discarding any previous storage. This is
+     * called from the constructor, so subclasses must not give their storage field an initializer.
+     *
+     * @param size
+     *            the number of values to hold, which is {@link #getStorageSize()}
+     */
+    protected abstract void allocate(int size);
+
+    /**
+     * Release the value stored at <code>slot</code> as it is deleted. Queues of objects should
+     * clear the reference so it can be collected; by default nothing is done. This is called
+     * before the start moves past the value, so it is still at {@link #getDataStartIndex()}.
+     *
+     * @param slot
+     *            the storage index of the deleted value
+     */
+    protected void release(int slot) {
+    }
+
+    /**
+     * Initializes the indexes.
+     */
+    protected void init() {
+        allocate(mask + 1);
+        modCount++;
+        dataStart = 0;
+        dataEnd = -1; //After we've inserted data, we increment the value.
+    }
+
+    /**
+     * Find if this index is in the range of the actual data in the queue, that
+     * is whether there is a value at that index that has not been overwritten or
+     * deleted. See {@link #dataStart} and {@link #dataEnd}.
+     *
+     * @param no the index to check if it is in range
+     * @return boolean
+     */
+    protected boolean inRange(long no) {
+        return isIndexInDataRange(no);
+    }
+
+    /**
+     * Checks to see if the queue is full. Return a boolean accordingly.
+     *
+     * @return
+     *      boolean
+     */
+    public boolean isFull() {
+        return getSize() == maxSize;
+    }
+
+    /**
+     * Check to see if the queue is empty.
+     *
+     * @return
+     *      boolean
+     */
+    public boolean isEmpty() {
+        return dataEnd < dataStart;
+    }
+
+    /**
+     * Make room for a new value at the end of the queue, deleting the value at the start if the
+     * queue is full, and count it as inserted.
+     *
+     * @return the storage index to put the new value at
+     */
+    protected int insert() {
+        /* If the queue is full, the new value overwrites the oldest one */
+        if (isFull()) {
+            delete();
+        }
+
+        dataEnd++;
+        modCount++;
+
+        return storageIndex(dataEnd);
+    }
+
+    /**
+     * Deletes a value from the start of the queue.
+     *
+     * @return true if value was deleted, false otherwise
+     */
+    public boolean delete() {
+        if (isEmpty()) {
+            logger.info("Queue is empty cannot delete - returning");
+            return false;
+        }
+        /* delete value */
+        release(storageIndex(dataStart));
+
+        dataStart++;
+        modCount++;
+
+        return true;
+    }
+
+    /**
+     * Get the storage index of the value at the given absolute index.
+     *
+     * @param index
+     *            the absolute index
+     * @return the storage index
+     * @throws IndexOutOfBoundsException
+     *             if the index does not lie in the range {@link #inRange(long)} of the actual data
+     *             in the queue
+     */
+    protected int slot(long index) throws IndexOutOfBoundsException {
+        if (inRange(index)) {
+            return storageIndex(index);
+        } else {
+            throw new IndexOutOfBoundsException("Index being accessed is "
+                    + index);
+        }
+    }
+
+    /**
+     * Get the storage index that the value at absolute index <code>index</code> is kept at, or
+     * would be kept at, without checking that the value is in the queue. Consecutive indexes map
+     * to consecutive storage indexes, wrapping from the end of the storage back to 0.
+     *
+     * @param index
+     *            the absolute index
+     * @return the storage index
+     */
+    protected final int storageIndex(long index) {
+        return (int) index & mask;
+    }
+
+    /**
+     * Checks that <code>from</code> and <code>to</code> are both in the queue and in order, for
+     * the aggregate queries over a range of values.
+     *
+     * @param from
+     *            the absolute index of the first value
+     * @param to
+     *            the absolute index of the last value, inclusive
+     * @throws IndexOutOfBoundsException
+     *             if they do not describe a range of values in the queue
+     */
+    protected void checkRange(long from, long to) throws IndexOutOfBoundsException {
+        if ((from > to) || !inRange(from) || !inRange(to)) {
+            throw new IndexOutOfBoundsException("Range being accessed is " + from + " to " + to);
+        }
+    }
+
+    /**
+     * Get the position in a sorted range of <code>n</code> values of the given percentile, by the
+     * nearest-rank method.
+     *
+     * @param percentile
+     *            the percentile, from 0 to 100
+     * @param n
+     *            the number of values
+     * @return the position of the percentile, from 0 to <code>n - 1</code>
+     * @throws IllegalArgumentException
+     *             if the percentile is not between 0 and 100
+     */
+    static int rank(double percentile, int n) {
+        if (!(percentile >= 0) || (percentile > 100)) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        return Math.max(0, (int) Math.ceil(percentile / 100 * n) - 1);
+    }
+
+    /**
+     * Get the position of an absolute index in a ring of {@link #getMaxSize()} values, as reported
+     * by {@link #getQueueStartIndex()} and {@link #getQueueEndIndex()}. Example if the queue holds
+     * 3 values, index 11 is at position 2. This is not where the value is stored; see
+     * {@link #storageIndex(long)}.
+     *
+     * @param indexToRead
+     * @return
+     */
+    protected int getRelativeIndex(long indexToRead) {
+        return (int) (indexToRead % maxSize);
+    }
+
+    /**
+     * Getter method for {@link #dataStart}
+     * @return long
+     */
+    public long getDataStartIndex() {
+        return this.dataStart;
+    }
+
+    /**
+     * Getter method for {@link #dataEnd}
+     * @return
+     */
+    public long getDataEndIndex() {
+        return this.dataEnd;
+    }
+
+    /**
+     * Get the position of the oldest value in a ring of {@link #getMaxSize()} values.
+     * @return
+     */
+    public int getQueueStartIndex() {
+        return getRelativeIndex(dataStart);
+    }
+
+    /**
+     * Get the position of the newest value in a ring of {@link #getMaxSize()} values, or -1 if
+     * nothing has been inserted yet.
+     * @return
+     */
+    public int getQueueEndIndex() {
+        return (dataEnd < 0) ? -1 : getRelativeIndex(dataEnd);
+    }
+
+    /**
+     * Get the most values the queue holds.
+     *
+     * @return the size given at construction
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Get the number of values the storage has room for: {@link #getMaxSize()} rounded up to a
+     * power of two.
+     *
+     * @return the length of the storage
+     */
+    public int getStorageSize() {
+        return mask + 1;
+    }
+
+    /**
+     * Checks to see if the given index is between
+     * {@link #dataStart} and {@link #dataEnd}
+     * @param index
+     * @return
+     */
+    protected boolean isIndexInDataRange(long index) {
+        return (index >= dataStart && index <= dataEnd);
+    }
+
+    /**
+     * Returns the current size of how much data is in this queue.
+     *
+     * @return
+     */
+    protected int getSize() {
+        return (int) (dataEnd - dataStart + 1);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Idling used by the lock-free buffers in this package while they wait on another thread. A
+ * waiting thread spins for the first few attempts, then yields, then parks for exponentially longer
+ * intervals up to {@value #MAX_PARK_NANOS} nanoseconds.
+ */
+final class Backoff {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long MAX_PARK_NANOS = 1000 * 1000; // 1 ms
+
+    private Backoff() {
+    }
+
+    /**
+     * Back off after an attempt to read or write made no progress.
+     *
+     * @param attempt
+     *            the number of consecutive attempts that made no progress
+     * @throws InterruptedIOException
+     *             if the calling thread has been interrupted
+     */
+    static void idle(int attempt) throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException();
+        }
+        backoff(attempt);
+    }
+
+    /**
+     * Back off without checking for interruption and without ever parking. This is for short waits
+     * that must run to completion, such as a producer waiting for an earlier producer to finish
+     * copying so it can publish data it has already copied. Yielding rather than parking lets a
+     * preempted producer finish as soon as possible.
+     *
+     * @param attempt
+     *            the number of consecutive attempts that made no progress
+     */
+    static void pause(int attempt) {
+        if (attempt >= SPIN_TRIES) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Spin, then yield, then park with an exponentially growing interval.
+     *
+     * @param attempt
+     *            the number of consecutive attempts that made no progress
+     */
+    private static void backoff(int attempt) {
+        if (attempt < SPIN_TRIES) {
+            return;
+        } else if (attempt < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            int shift = Math.min(attempt - SPIN_TRIES - YIELD_TRIES, 20);
+            LockSupport.parkNanos(Math.min(1L << shift, MAX_PARK_NANOS));
+        }
+    }
+}
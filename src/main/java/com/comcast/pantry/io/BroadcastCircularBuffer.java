@@ -0,0 +1,360 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A circular buffer whose data is read by every registered reader rather than by just one. Each
+ * reader holds its own {@link Cursor} into the same ring, so one writer can feed several consumers
+ * (for example a live tailer, an archiver and a scanner) without a buffer and a copy per consumer.
+ * <p>
+ * Data stays in the ring until the slowest reader has read it, so that reader sets the free space
+ * of the writer. What happens when a reader falls a full ring behind is decided by the
+ * {@link LagPolicy}: either the writer waits for it, or it is dropped so the writer and the other
+ * readers can carry on.
+ * <p>
+ * A reader only sees the data written after it was registered. Once the buffer is closed, readers
+ * still get the data they had not read yet before their reads return <code>-1</code>.
+ */
+public class BroadcastCircularBuffer implements Closeable {
+
+    /**
+     * What to do when a reader is so far behind that the writer would overwrite data it has not
+     * read.
+     */
+    public enum LagPolicy {
+
+        /** The writer waits until the slowest reader catches up */
+        THROTTLE,
+
+        /** The lagging reader is dropped and the writer carries on without waiting */
+        DROP
+    }
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final LagPolicy lagPolicy;
+    private final boolean allowPartial;
+    private final List<Cursor> cursors = new ArrayList<Cursor>();
+
+    /* The position of the next byte to write; it only ever grows */
+    private long tail;
+    private boolean closed;
+
+    /**
+     * Construct a new BroadcastCircularBuffer.
+     *
+     * @param size
+     *            the size of the ring
+     * @param lagPolicy
+     *            what to do with readers that fall a full ring behind
+     * @throws IllegalArgumentException
+     *             if the size is not positive
+     */
+    public BroadcastCircularBuffer(int size, LagPolicy lagPolicy) {
+        this(size, lagPolicy, false);
+    }
+
+    /**
+     * Construct a new BroadcastCircularBuffer.
+     *
+     * @param size
+     *            the size of the ring
+     * @param lagPolicy
+     *            what to do with readers that fall a full ring behind
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     * @throws IllegalArgumentException
+     *             if the size is not positive
+     */
+    public BroadcastCircularBuffer(int size, LagPolicy lagPolicy, boolean allowPartial) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        this.buffer = new byte[size];
+        this.capacity = size;
+        this.lagPolicy = lagPolicy;
+        this.allowPartial = allowPartial;
+    }
+
+    /**
+     * Register a new reader. It reads the data written from now on.
+     *
+     * @return the reader's cursor
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public synchronized Cursor newReader() {
+        if (closed) {
+            throw new IllegalStateException("Cannot read from a closed stream");
+        }
+        Cursor cursor = new Cursor(tail);
+        cursors.add(cursor);
+        return cursor;
+    }
+
+    /**
+     * Adds the entire contents of <code>b</code> for every reader to read.
+     *
+     * @param b
+     *            the data to write
+     * @throws InterruptedIOException
+     *             if the writing thread is interrupted while waiting for a reader to catch up
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     * @see #write(byte[], int, int)
+     */
+    public void write(byte[] b) throws InterruptedIOException {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Adds the contents of <code>b</code> between <code>off</code> and <code>(off+len)</code> for
+     * every reader to read. With {@link LagPolicy#THROTTLE} this blocks while the slowest reader is a
+     * full ring behind; with {@link LagPolicy#DROP} the readers the write would overrun are dropped
+     * instead.
+     *
+     * @param b
+     *            the data to write
+     * @param off
+     *            the offset of the first byte to write
+     * @param len
+     *            the number of bytes to write
+     * @throws InterruptedIOException
+     *             if the writing thread is interrupted while waiting for a reader to catch up
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public synchronized void write(byte[] b, int off, int len) throws InterruptedIOException {
+        CircularBuffer.checkBounds(b, off, len);
+        int end = off + len;
+
+        while (off < end) {
+            if (closed) {
+                throw new IllegalStateException("Cannot write to a closed stream");
+            }
+
+            int n = Math.min(end - off, capacity);
+            if (lagPolicy == LagPolicy.DROP) {
+                dropReadersBefore(tail + n - capacity);
+            } else {
+                n = (int) Math.min(n, capacity - (tail - slowest()));
+                if (n == 0) {
+                    await();
+                    continue;
+                }
+            }
+
+            int index = (int) (tail % capacity);
+            int first = Math.min(n, capacity - index);
+            System.arraycopy(b, off, buffer, index, first);
+            System.arraycopy(b, off + first, buffer, 0, n - first);
+            off += n;
+            tail += n;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Get the number of registered readers that have not been closed or dropped.
+     *
+     * @return the number of readers
+     */
+    public synchronized int getReaderCount() {
+        return cursors.size();
+    }
+
+    /**
+     * Get the policy for readers that fall a full ring behind.
+     *
+     * @return the lag policy
+     */
+    public LagPolicy getLagPolicy() {
+        return lagPolicy;
+    }
+
+    /**
+     * Closes the buffer to writing. Readers can still read what they have not read yet.
+     *
+     * @see java.io.Closeable#close()
+     */
+    public synchronized void close() {
+        closed = true;
+        this.notifyAll();
+    }
+
+    /**
+     * Get the position of the slowest reader, or the write position if there are no readers. Must
+     * be called while holding the lock.
+     */
+    private long slowest() {
+        long slowest = tail;
+        for (Cursor cursor : cursors) {
+            slowest = Math.min(slowest, cursor.position);
+        }
+        return slowest;
+    }
+
+    /**
+     * Drop every reader whose position is before <code>position</code>. Must be called while
+     * holding the lock.
+     */
+    private void dropReadersBefore(long position) {
+        for (int i = cursors.size() - 1; i >= 0; i--) {
+            Cursor cursor = cursors.get(i);
+            if (cursor.position < position) {
+                cursor.dropped = true;
+                cursors.remove(i);
+            }
+        }
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            this.wait();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * One reader's position in a {@link BroadcastCircularBuffer}. Reading through a cursor does not
+     * affect any other reader. A cursor is meant to be used by one thread at a time; close it when
+     * the reader is done so it stops holding back the writer.
+     */
+    public class Cursor implements Closeable {
+
+        /* Guarded by the buffer's monitor */
+        private long position;
+        private boolean dropped;
+        private boolean detached;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Reads data into <code>b</code>. This is the same as calling
+         * {@link #read(byte[], int, int)} with the whole array.
+         *
+         * @param b
+         *            the array to read into
+         * @return the number of bytes read or <code>-1</code> if there is no more data for this
+         *         reader
+         * @throws InterruptedIOException
+         *             if the reading thread is interrupted while waiting for data
+         */
+        public int read(byte[] b) throws InterruptedIOException {
+            return read(b, 0, b.length);
+        }
+
+        /**
+         * Reads data into <code>b</code>, starting at offset <code>off</code>, with the same
+         * blocking behavior as {@link CircularBuffer#read(byte[], int, int)}. Returns
+         * <code>-1</code> once the buffer has been closed and this reader has read everything, or
+         * once this reader has been closed or dropped; {@link #isDropped()} tells the last case
+         * apart.
+         *
+         * @param b
+         *            the array to read into
+         * @param off
+         *            the offset to start storing bytes at
+         * @param len
+         *            the maximum number of bytes to read
+         * @return the number of bytes read or <code>-1</code> if there is no more data for this
+         *         reader
+         * @throws InterruptedIOException
+         *             if the reading thread is interrupted while waiting for data
+         */
+        public int read(byte[] b, int off, int len) throws InterruptedIOException {
+            CircularBuffer.checkBounds(b, off, len);
+
+            synchronized (BroadcastCircularBuffer.this) {
+                int n = 0;
+
+                while (true) {
+                    if (dropped || detached) {
+                        return (0 == n) ? -1 : n;
+                    }
+                    if (position == tail) {
+                        if (closed || (allowPartial && (n > 0))) {
+                            return (closed && (0 == n)) ? -1 : n;
+                        }
+                        await();
+                        continue;
+                    }
+
+                    int count = (int) Math.min(len - n, tail - position);
+                    int index = (int) (position % capacity);
+                    int first = Math.min(count, capacity - index);
+                    System.arraycopy(buffer, index, b, off + n, first);
+                    System.arraycopy(buffer, 0, b, off + n + first, count - first);
+                    n += count;
+                    position += count;
+                    BroadcastCircularBuffer.this.notifyAll();
+
+                    if (n == len) {
+                        return n;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Get the number of bytes written that this reader has not read yet.
+         *
+         * @return the reader's lag
+         */
+        public long getLag() {
+            synchronized (BroadcastCircularBuffer.this) {
+                return tail - position;
+            }
+        }
+
+        /**
+         * Returns <code>true</code> if this reader fell too far behind and was dropped under
+         * {@link LagPolicy#DROP}.
+         *
+         * @return <code>true</code> if the reader was dropped
+         */
+        public boolean isDropped() {
+            synchronized (BroadcastCircularBuffer.this) {
+                return dropped;
+            }
+        }
+
+        /**
+         * Unregisters this reader, so the writer no longer waits for it.
+         *
+         * @see java.io.Closeable#close()
+         */
+        public void close() {
+            synchronized (BroadcastCircularBuffer.this) {
+                detached = true;
+                cursors.remove(this);
+                BroadcastCircularBuffer.this.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Base class for the {@link ByteStore}s that keep their data in a {@link ByteBuffer}. The buffer's
+ * position is moved on every access, which is safe because stores are never shared between
+ * threads without the owning buffer's lock.
+ */
+public abstract class ByteBufferStore implements ByteStore {
+
+    /** The data region, with its position at zero and its limit at its capacity */
+    protected final ByteBuffer data;
+
+    /**
+     * Construct a new ByteBufferStore over the whole of <code>data</code>.
+     *
+     * @param data
+     *            the region to store data in
+     */
+    protected ByteBufferStore(ByteBuffer data) {
+        this.data = data;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#capacity()
+     */
+    public int capacity() {
+        return data.capacity();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#get(int, byte[], int, int)
+     */
+    public void get(int index, byte[] dst, int off, int len) {
+        data.position(index);
+        data.get(dst, off, len);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#put(int, byte[], int, int)
+     */
+    public void put(int index, byte[] src, int off, int len) {
+        data.position(index);
+        data.put(src, off, len);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#get(int, java.nio.ByteBuffer, int)
+     */
+    public void get(int index, ByteBuffer dst, int len) {
+        data.limit(index + len);
+        data.position(index);
+        dst.put(data);
+        data.limit(data.capacity());
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#put(int, java.nio.ByteBuffer, int)
+     */
+    public void put(int index, ByteBuffer src, int len) {
+        int limit = src.limit();
+        src.limit(src.position() + len);
+        data.position(index);
+        data.put(src);
+        src.limit(limit);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#view(int, int)
+     */
+    public ByteBuffer view(int index, int len) {
+        ByteBuffer view = data.duplicate();
+        view.limit(index + len);
+        view.position(index);
+        return view.slice();
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the readable data of a {@link CircularBuffer} in place, from
+ * {@link CircularBuffer#drain(ByteChunkHandler, int)}.
+ */
+public interface ByteChunkHandler {
+
+    /**
+     * Handle a chunk of the buffer's readable data. The chunk is a read-only view straight into the
+     * buffer and is only valid until this method returns. The handler consumes data by advancing
+     * the chunk's position; whatever it leaves between the position and the limit stays in the
+     * buffer for the next read.
+     *
+     * @param chunk
+     *            a read-only view of the next readable bytes
+     */
+    void onChunk(ByteBuffer chunk);
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+
+/**
+ * The blocking read/write/close contract shared by the circular byte buffers in this package. Both
+ * {@link CircularBufferInputStream} and {@link CircularBufferOutputStream} work against this
+ * contract, so any implementation can be wrapped as a stream.
+ *
+ * @see CircularBuffer
+ * @see SpscCircularBuffer
+ */
+public interface ByteRing extends Closeable {
+
+    /**
+     * Adds the entire contents of <code>b</code> to the ring, blocking while the ring is full.
+     *
+     * @param b
+     *            the data to write
+     * @throws InterruptedIOException
+     *             if the writing thread is interrupted while waiting for space
+     * @throws IllegalStateException
+     *             if the ring has been closed
+     */
+    void write(byte[] b) throws InterruptedIOException;
+
+    /**
+     * Adds <code>len</code> bytes of <code>b</code> starting at <code>off</code> to the ring,
+     * blocking while the ring is full.
+     *
+     * @param b
+     *            the data to write
+     * @param off
+     *            the offset of the first byte to write
+     * @param len
+     *            the number of bytes to write
+     * @throws InterruptedIOException
+     *             if the writing thread is interrupted while waiting for space
+     * @throws IllegalStateException
+     *             if the ring has been closed
+     */
+    void write(byte[] b, int off, int len) throws InterruptedIOException;
+
+    /**
+     * Reads data from the ring into <code>b</code>, blocking until there is data available or the
+     * ring is closed.
+     *
+     * @param b
+     *            the array to read into
+     * @return the number of bytes read or <code>-1</code> if the ring has been closed
+     * @throws InterruptedIOException
+     *             if the reading thread is interrupted while waiting for data
+     */
+    int read(byte[] b) throws InterruptedIOException;
+
+    /**
+     * Reads up to <code>len</code> bytes from the ring into <code>b</code> starting at
+     * <code>off</code>, blocking until there is data available or the ring is closed.
+     *
+     * @param b
+     *            the array to read into
+     * @param off
+     *            the offset in <code>b</code> to start reading into
+     * @param len
+     *            the number of bytes to read
+     * @return the number of bytes read or <code>-1</code> if the ring has been closed
+     * @throws InterruptedIOException
+     *             if the reading thread is interrupted while waiting for data
+     */
+    int read(byte[] b, int off, int len) throws InterruptedIOException;
+
+    /**
+     * Closes the ring, waking up any blocked readers and writers.
+     */
+    void close();
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * The fixed size region of memory that a {@link CircularBuffer} keeps its data in. Implementations
+ * are not thread-safe; the owning buffer serializes all access.
+ *
+ * @see HeapByteStore
+ * @see DirectByteStore
+ * @see MappedByteStore
+ */
+public interface ByteStore extends Closeable {
+
+    /**
+     * Get the number of bytes this store can hold.
+     *
+     * @return the capacity
+     */
+    int capacity();
+
+    /**
+     * Copy <code>len</code> bytes starting at <code>index</code> in this store into
+     * <code>dst</code>.
+     *
+     * @param index
+     *            the position in this store to copy from
+     * @param dst
+     *            the array to copy into
+     * @param off
+     *            the offset in <code>dst</code> to copy to
+     * @param len
+     *            the number of bytes to copy
+     */
+    void get(int index, byte[] dst, int off, int len);
+
+    /**
+     * Copy <code>len</code> bytes from <code>src</code> into this store starting at
+     * <code>index</code>.
+     *
+     * @param index
+     *            the position in this store to copy to
+     * @param src
+     *            the array to copy from
+     * @param off
+     *            the offset in <code>src</code> to copy from
+     * @param len
+     *            the number of bytes to copy
+     */
+    void put(int index, byte[] src, int off, int len);
+
+    /**
+     * Copy <code>len</code> bytes starting at <code>index</code> in this store into
+     * <code>dst</code>, advancing its position.
+     *
+     * @param index
+     *            the position in this store to copy from
+     * @param dst
+     *            the buffer to copy into
+     * @param len
+     *            the number of bytes to copy
+     */
+    void get(int index, ByteBuffer dst, int len);
+
+    /**
+     * Copy <code>len</code> bytes from <code>src</code> into this store starting at
+     * <code>index</code>, advancing the position of <code>src</code>.
+     *
+     * @param index
+     *            the position in this store to copy to
+     * @param src
+     *            the buffer to copy from
+     * @param len
+     *            the number of bytes to copy
+     */
+    void put(int index, ByteBuffer src, int len);
+
+    /**
+     * Get a view of <code>len</code> bytes of this store starting at <code>index</code>. The view
+     * shares its content with the store, so this is how channels read and write the store directly.
+     * The view's position is zero and its limit and capacity are <code>len</code>.
+     *
+     * @param index
+     *            the position in this store the view starts at
+     * @param len
+     *            the length of the view
+     * @return the view
+     */
+    ByteBuffer view(int index, int len);
+
+    /**
+     * Record where the owning buffer's unread data is. Stores that outlive the process use this to
+     * let the data be found again after a crash; all others ignore it.
+     *
+     * @param start
+     *            the index of the first unread byte
+     * @param used
+     *            the number of unread bytes
+     */
+    void checkpoint(int start, int used);
+
+    /**
+     * Release this store. It must not be used afterwards.
+     */
+    void close();
+}
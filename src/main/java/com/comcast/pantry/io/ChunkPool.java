@@ -0,0 +1,112 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of equally sized byte arrays shared by {@link SegmentedCircularBuffer}s. Buffers take a
+ * chunk when they need more room and give it back as soon as it has been read, so memory moves
+ * between buffers a chunk at a time instead of every buffer holding its full capacity. Up to
+ * <code>maxPooled</code> returned chunks are kept for reuse; any more are left to the garbage
+ * collector.
+ * <p>
+ * Keeping the chunks well below the G1 region size keeps them out of humongous allocation.
+ */
+public class ChunkPool {
+
+    private final int chunkSize;
+    private final int maxPooled;
+    private final ArrayDeque<byte[]> pooled = new ArrayDeque<byte[]>();
+    private long allocated;
+
+    /**
+     * Construct a new pool.
+     *
+     * @param chunkSize
+     *            the size of every chunk
+     * @param maxPooled
+     *            the most free chunks to keep for reuse
+     */
+    public ChunkPool(int chunkSize, int maxPooled) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Take a chunk from the pool, allocating a new one if the pool is empty. The chunk's contents
+     * are undefined.
+     *
+     * @return a chunk of {@link #getChunkSize()} bytes
+     */
+    public synchronized byte[] acquire() {
+        byte[] chunk = pooled.pollLast();
+        if (chunk == null) {
+            chunk = new byte[chunkSize];
+            allocated++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Give a chunk back to the pool. It must not be used afterwards.
+     *
+     * @param chunk
+     *            a chunk taken from this pool
+     * @throws IllegalArgumentException
+     *             if the chunk is not the size of this pool's chunks
+     */
+    public synchronized void release(byte[] chunk) {
+        if (chunk.length != chunkSize) {
+            throw new IllegalArgumentException("Chunk of " + chunk.length
+                    + " bytes does not belong to a pool of " + chunkSize + " byte chunks");
+        }
+        if (pooled.size() < maxPooled) {
+            pooled.addLast(chunk);
+        }
+    }
+
+    /**
+     * Get the size of every chunk.
+     *
+     * @return the chunk size
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Get the number of free chunks waiting in the pool.
+     *
+     * @return the number of pooled chunks
+     */
+    public synchronized int getPooledCount() {
+        return pooled.size();
+    }
+
+    /**
+     * Get the number of chunks this pool has ever allocated.
+     *
+     * @return the number of chunks allocated
+     */
+    public synchronized long getAllocatedCount() {
+        return allocated;
+    }
+}
@@ -16,8 +16,23 @@
 
 package com.comcast.pantry.io;
 
-import java.io.Closeable;
+import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.apache.log4j.Logger;
 
@@ -27,11 +42,55 @@ import org.apache.log4j.Logger;
  * e.g. new BufferedReader(new InputStreamReader(new CircularBufferInputStream(circularBuffer))),
  * then circularBuffer.close() must be called before calling bufferedReader.close() to avoid
  * deadlock situation
+ * <p>
+ * If there is exactly one writing thread and one reading thread, {@link SpscCircularBuffer} offers
+ * the same contract without taking a lock on every read and write.
+ * <p>
+ * The data is kept in a {@link ByteStore}, which is a plain heap array unless another store is
+ * given. Very large buffers can use a {@link DirectByteStore} to stay out of the heap, or a
+ * {@link MappedByteStore} so the buffered data can be recovered from a file after a crash.
+ * <p>
+ * Besides byte arrays, the buffer can be filled and drained with {@link ByteBuffer}s and directly
+ * from and to NIO channels, moving the data between the channel and the store without an
+ * intermediate array. It is itself a {@link ByteChannel}.
+ * <p>
+ * By default a thread that finds the buffer full or empty sleeps on the buffer's lock until
+ * another thread wakes it. Writers and readers wait on separate conditions, so a reader only ever
+ * wakes a writer and the other way around, and the lock can be made fair so that waiting threads
+ * take turns in arrival order. Latency sensitive users can pick a polling {@link WaitStrategy}
+ * instead, which releases the buffer and polls it again without ever sleeping on the lock.
+ * <p>
+ * Threads that must never block, such as event loops, can use {@link #tryWrite(byte[], int, int)}
+ * and {@link #tryRead(byte[], int, int)}, which only move what fits right now. The timed
+ * {@link #write(byte[], int, int, long, TimeUnit)} and {@link #read(byte[], int, int, long, TimeUnit)}
+ * wait for at most the given time and throw a {@link CircularBufferTimeoutException} reporting how
+ * much was transferred if it elapses.
+ * <p>
+ * A consumer that parses the data incrementally can use {@link #drain(ByteChunkHandler, int)} to
+ * look at the readable data in place, without copying it out first. Likewise a producer can
+ * serialize straight into the free space with {@link #claim(int)} and {@link #commit(int)}.
+ * <p>
+ * When losing data is better than stalling the producer, for example when capturing diagnostic
+ * logs, the buffer can be put in overwrite mode with {@link #setOverwrite(boolean)}. A write to a
+ * full buffer then discards the oldest data to make room instead of waiting, and the number of
+ * bytes discarded is counted in {@link #getDroppedBytes()}.
+ * <p>
+ * Rather than being fixed at construction, the capacity can be made elastic with an
+ * {@link ElasticPolicy}: the buffer grows during bursts instead of stalling writers and shrinks
+ * back once it has been quiet for a while. {@link #getResizeCount()} and {@link #getPeakUsed()}
+ * show what that costs.
+ * <p>
+ * The buffer keeps running totals of the bytes moved through it and of how often and for how long
+ * writers and readers blocked on it, which {@link #register(String)} publishes as a
+ * {@link CircularBufferMXBean}. The counters are plain fields updated inside the critical sections
+ * the buffer already takes, so they cost readers and writers no extra synchronization; the getters
+ * take the lock briefly instead, which only a monitoring thread pays for. Only threads that block
+ * on the lock are counted as stalls; a polling {@link WaitStrategy} never blocks.
  *
  * @author Clark Malmgren
  * @author Kevin Pearson
  */
-public class CircularBuffer implements Closeable {
+public class CircularBuffer implements ByteRing, ByteChannel, CircularBufferMXBean {
 
     protected Logger logger = Logger.getLogger(CircularBuffer.class);
 
@@ -39,9 +98,60 @@ public class CircularBuffer implements Closeable {
 
     private int start;
     private int used;
-    private byte[] buffer;
+    private int capacity;
+    private ByteStore store;
     private boolean closed;
     private boolean allowPartial = false;
+    private final WaitStrategy waitStrategy;
+    private boolean overwrite;
+    private long droppedBytes;
+
+    /**
+     * Guards all of the state below. Writers wait on <code>notFull</code> for free space and
+     * readers wait on <code>notEmpty</code> for data.
+     */
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private final Condition notEmpty;
+
+    /**
+     * Running totals of the bytes written and read, and of the times and nanoseconds writers and
+     * readers spent blocked on the lock.
+     */
+    private long bytesIn;
+    private long bytesOut;
+    private long producerBlocks;
+    private long producerBlockedNanos;
+    private long consumerBlocks;
+    private long consumerBlockedNanos;
+
+    /**
+     * The name this buffer is registered under with the platform MBean server, if any.
+     */
+    private ObjectName objectName;
+
+    /**
+     * How the capacity changes, or <code>null</code> if it is fixed. When the capacity is elastic,
+     * <code>lastHighNanos</code> is the last time the unread data was above the high-water mark of
+     * the minimum capacity.
+     */
+    private final ElasticPolicy elastic;
+    private long lastHighNanos;
+    private int resizeCount;
+    private int peakUsed;
+
+    /**
+     * Set while {@link #transferFrom(ReadableByteChannel)} fills the free space outside the lock,
+     * and {@link #transferTo(WritableByteChannel)} drains the used space outside the lock.
+     */
+    private boolean writerBusy;
+    private boolean readerBusy;
+
+    /**
+     * The thread holding the outstanding {@link #claim(int)}, and the size of that claim.
+     */
+    private Thread claimer;
+    private int claimed;
 
     /**
      * The last thread that called read().
@@ -70,11 +180,165 @@ public class CircularBuffer implements Closeable {
      *            fill the read buffer
      */
     public CircularBuffer(int size, boolean allowPartial) {
-        this.buffer = new byte[size];
+        this(size, allowPartial, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * Construct a new CircularBuffer of the given size.
+     *
+     * @param size
+     *            the size of the given circular buffer
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     * @param waitStrategy
+     *            how readers and writers wait while the buffer is empty or full
+     */
+    public CircularBuffer(int size, boolean allowPartial, WaitStrategy waitStrategy) {
+        this(new HeapByteStore(size), allowPartial, waitStrategy);
+    }
+
+    /**
+     * Construct a new CircularBuffer of the given size.
+     *
+     * @param size
+     *            the size of the given circular buffer
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     * @param waitStrategy
+     *            how readers and writers wait while the buffer is empty or full
+     * @param fair
+     *            <code>true</code> if threads waiting for the lock should get it in arrival order,
+     *            trading some throughput for more even latency
+     */
+    public CircularBuffer(int size, boolean allowPartial, WaitStrategy waitStrategy, boolean fair) {
+        this(new HeapByteStore(size), allowPartial, waitStrategy, fair);
+    }
+
+    /**
+     * Construct a new CircularBuffer that keeps its data in the given store. The store is closed
+     * when this buffer is closed.
+     *
+     * @param store
+     *            the store to keep the data in, which also determines the size of the buffer
+     */
+    public CircularBuffer(ByteStore store) {
+        this(store, false);
+    }
+
+    /**
+     * Construct a new CircularBuffer that keeps its data in the given store. The store is closed
+     * when this buffer is closed.
+     *
+     * @param store
+     *            the store to keep the data in, which also determines the size of the buffer
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     */
+    public CircularBuffer(ByteStore store, boolean allowPartial) {
+        this(store, allowPartial, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * Construct a new CircularBuffer that keeps its data in the given store. The store is closed
+     * when this buffer is closed.
+     *
+     * @param store
+     *            the store to keep the data in, which also determines the size of the buffer
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     * @param waitStrategy
+     *            how readers and writers wait while the buffer is empty or full
+     */
+    public CircularBuffer(ByteStore store, boolean allowPartial, WaitStrategy waitStrategy) {
+        this(store, allowPartial, waitStrategy, false);
+    }
+
+    /**
+     * Construct a new CircularBuffer that keeps its data in the given store. The store is closed
+     * when this buffer is closed.
+     *
+     * @param store
+     *            the store to keep the data in, which also determines the size of the buffer
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     * @param waitStrategy
+     *            how readers and writers wait while the buffer is empty or full
+     * @param fair
+     *            <code>true</code> if threads waiting for the lock should get it in arrival order,
+     *            trading some throughput for more even latency
+     */
+    public CircularBuffer(ByteStore store, boolean allowPartial, WaitStrategy waitStrategy,
+            boolean fair) {
+        this(store, allowPartial, waitStrategy, null, fair);
+    }
+
+    /**
+     * Construct a new CircularBuffer whose capacity grows and shrinks according to the given
+     * policy. The data is kept on the heap.
+     *
+     * @param policy
+     *            how the capacity changes
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     */
+    public CircularBuffer(ElasticPolicy policy, boolean allowPartial) {
+        this(policy, allowPartial, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * Construct a new CircularBuffer whose capacity grows and shrinks according to the given
+     * policy. The data is kept on the heap.
+     *
+     * @param policy
+     *            how the capacity changes
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     * @param waitStrategy
+     *            how readers and writers wait while the buffer is empty or full
+     */
+    public CircularBuffer(ElasticPolicy policy, boolean allowPartial, WaitStrategy waitStrategy) {
+        this(new HeapByteStore(policy.getMinCapacity()), allowPartial, waitStrategy, policy,
+                false);
+    }
+
+    private CircularBuffer(ByteStore store, boolean allowPartial, WaitStrategy waitStrategy,
+            ElasticPolicy elastic, boolean fair) {
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("A wait strategy is required");
+        }
+        this.lock = new ReentrantLock(fair);
+        this.notFull = lock.newCondition();
+        this.notEmpty = lock.newCondition();
+        this.store = store;
+        this.elastic = elastic;
+        this.waitStrategy = waitStrategy;
+        this.capacity = store.capacity();
         this.start = 0;
         this.used = 0;
         this.closed = false;
         this.allowPartial = allowPartial;
+        store.checkpoint(start, used);
     }
 
     private void dumpStackTrace(StackTraceElement[] stackTrace) {
@@ -85,61 +349,251 @@ public class CircularBuffer implements Closeable {
         }
     }
 
+    /**
+     * Adds the entire contents of <code>b</code> into the circular buffer. If the buffer becomes
+     * full at any time, this method will block until more space becomes available and the entire
+     * input has finished writing.
+     * @throws InterruptedIOException
+     *
+     * @see java.io.OutputStream#write(byte[])
+     */
+    public void write(byte[] b) throws InterruptedIOException {
+        write(b, 0, b.length);
+    }
+
     /**
      * Adds the contents of buf between <code>off</code> and <code>(off+len)</code> into the
      * circular buffer. If the buffer becomes full at any time, this method will block until more
      * space becomes becomes available and the entire input has finished writing.
      * @throws InterruptedIOException
      *
-     * @see java.io.OutputStream#write(byte[])
+     * @see java.io.OutputStream#write(byte[], int, int)
      */
-    public synchronized void write(byte[] b) throws InterruptedIOException {
-        int off = 0;
+    public void write(byte[] b, int off, int len) throws InterruptedIOException {
+        checkBounds(b, off, len);
+        int end = off + len;
+        int attempt = 0;
 
         while (true) {
-            /* If we are full, block until something is read */
-            if (used == buffer.length) {
-                try {
-                    this.wait(WRITE_TIMEOUT_MS);
-                } catch (InterruptedException e) {
-                    throw new InterruptedIOException();
-                }
-                if (!closed && (used == buffer.length)) {
-                    logger.error("timed out waiting to write buffer: " + this);
-                    // For trouble-shooting why the reader thread is not reading
-                    if (lastReaderThread != null) {
-                        this.dumpStackTrace(lastReaderThread.getStackTrace());
-                    }
+            lock.lock();
+            try {
+                if (!awaitSpace()) {
+                    return;
+                }
+
+                /* Write as much as we can in larger chunks (take advantage of arraycopy) */
+                int n = put(b, off, end - off);
+                off += n;
+
+                /* Notify anything else that might be waiting */
+                signalWaiters();
+
+                /* If we finally wrote everything, return cause we are done! */
+                if (off == end) {
                     return;
                 }
+                attempt = (n > 0) ? 0 : attempt + 1;
+            } finally {
+                lock.unlock();
+            }
+            waitStrategy.idle(attempt);
+        }
+    }
+
+    /**
+     * Adds the remaining contents of <code>src</code> into the circular buffer, with the same
+     * blocking behavior as {@link #write(byte[])}. The bytes are copied straight from
+     * <code>src</code> into the backing store, so a direct buffer never passes through a
+     * <code>byte[]</code>.
+     *
+     * @param src
+     *            the buffer to write from; its position is advanced past the bytes written
+     * @return the number of bytes written
+     * @throws InterruptedIOException
+     *             if the writing thread is interrupted while waiting for space
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     *
+     * @see java.nio.channels.WritableByteChannel#write(ByteBuffer)
+     */
+    public int write(ByteBuffer src) throws InterruptedIOException {
+        int len = src.remaining();
+        int attempt = 0;
+
+        while (true) {
+            lock.lock();
+            try {
+                if (!awaitSpace()) {
+                    return len - src.remaining();
+                }
 
+                int n = put(src);
+                signalWaiters();
+
+                if (!src.hasRemaining()) {
+                    return len;
+                }
+                attempt = (n > 0) ? 0 : attempt + 1;
+            } finally {
+                lock.unlock();
             }
+            waitStrategy.idle(attempt);
+        }
+    }
+
+    /**
+     * Adds as much of <code>b</code> as fits into the free space right now, without waiting.
+     *
+     * @param b
+     *            the data to write
+     * @return the number of bytes written, possibly zero
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public int tryWrite(byte[] b) {
+        return tryWrite(b, 0, b.length);
+    }
 
-            /* If we are closed, throw and IllegalStateException */
+    /**
+     * Adds as much of <code>b</code> between <code>off</code> and <code>(off+len)</code> as fits
+     * into the free space right now, without waiting.
+     *
+     * @param b
+     *            the data to write
+     * @param off
+     *            the offset of the first byte to write
+     * @param len
+     *            the number of bytes to write
+     * @return the number of bytes written, possibly zero
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public int tryWrite(byte[] b, int off, int len) {
+        lock.lock();
+        try {
+            checkBounds(b, off, len);
             if (closed) {
                 throw new IllegalStateException("Cannot write to a closed stream");
             }
 
-            /* Write as much as we can in larger chunks (take advantage of arraycopy) */
-            while ((used < buffer.length) && (off < b.length)) {
-                int len = buffer.length - (isWrapped() ?  used : start + used);
-                len = Math.min(len, b.length - off);
+            int n = put(b, off, len);
+            signalWaiters();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                System.arraycopy(b, off, buffer, getEnd(), len);
-                off += len;
-                used += len;
+    /**
+     * Adds as much of the remaining contents of <code>src</code> as fits into the free space right
+     * now, without waiting.
+     *
+     * @param src
+     *            the buffer to write from; its position is advanced past the bytes written
+     * @return the number of bytes written, possibly zero
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public int tryWrite(ByteBuffer src) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Cannot write to a closed stream");
             }
 
-            /* Notify anything else that might be waiting */
-            this.notify();
+            int n = put(src);
+            signalWaiters();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            /* If we finally wrote everything, return cause we are done! */
-            if (off == b.length) {
-                return;
+    /**
+     * Adds the entire contents of <code>b</code> into the circular buffer, waiting for at most the
+     * given time for space to become available.
+     *
+     * @param b
+     *            the data to write
+     * @param timeout
+     *            the longest time to wait
+     * @param unit
+     *            the unit of <code>timeout</code>
+     * @throws CircularBufferTimeoutException
+     *             if the timeout elapsed before all of the data was written; the bytes that were
+     *             written are reported in its <code>bytesTransferred</code>
+     * @throws InterruptedIOException
+     *             if the writing thread is interrupted while waiting for space
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public void write(byte[] b, long timeout, TimeUnit unit) throws InterruptedIOException {
+        write(b, 0, b.length, timeout, unit);
+    }
+
+    /**
+     * Adds the contents of <code>b</code> between <code>off</code> and <code>(off+len)</code> into
+     * the circular buffer, waiting for at most the given time for space to become available.
+     *
+     * @param b
+     *            the data to write
+     * @param off
+     *            the offset of the first byte to write
+     * @param len
+     *            the number of bytes to write
+     * @param timeout
+     *            the longest time to wait
+     * @param unit
+     *            the unit of <code>timeout</code>
+     * @throws CircularBufferTimeoutException
+     *             if the timeout elapsed before all of the data was written; the bytes that were
+     *             written are reported in its <code>bytesTransferred</code>
+     * @throws InterruptedIOException
+     *             if the writing thread is interrupted while waiting for space
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public void write(byte[] b, int off, int len, long timeout, TimeUnit unit)
+            throws InterruptedIOException {
+        checkBounds(b, off, len);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int n = 0;
+        int attempt = 0;
+
+        while (true) {
+            lock.lock();
+            try {
+                awaitSpace(deadline - System.nanoTime());
+
+                int k = put(b, off + n, len - n);
+                n += k;
+                signalWaiters();
+
+                if (n == len) {
+                    return;
+                }
+                if (deadline - System.nanoTime() <= 0) {
+                    throw new CircularBufferTimeoutException("Timed out waiting to write", n);
+                }
+                attempt = (k > 0) ? 0 : attempt + 1;
+            } finally {
+                lock.unlock();
             }
+            waitStrategy.idle(attempt);
         }
     }
 
+    /**
+     * Reads data from the buffer into <code>b</code>. This is the same as calling
+     * {@link #read(byte[], int, int)} with the whole array.
+     * @throws InterruptedIOException
+     *
+     * @see java.io.InputStream#read(byte[])
+     */
+    public int read(byte[] b) throws InterruptedIOException {
+        return read(b, 0, b.length);
+    }
+
     /**
      * Reads data from the buffer into <code>buf</code>, starting at offset <code>off</code>. No
      * more than maxlen may be read at any time. This method may return any about of data of size &gt;
@@ -148,84 +602,1281 @@ public class CircularBuffer implements Closeable {
      * is called.
      * @throws InterruptedIOException
      *
-     * @see java.io.InputStream#read(byte[])
+     * @see java.io.InputStream#read(byte[], int, int)
      */
-    public synchronized int read(byte[] b) throws InterruptedIOException {
+    public int read(byte[] b, int off, int len) throws InterruptedIOException {
+        checkBounds(b, off, len);
 
-        this.lastReaderThread = Thread.currentThread();
-        int off = 0;
+        int n = 0;
+        int attempt = 0;
 
-        if (closed) {
-            return -1;
+        while (true) {
+            lock.lock();
+            try {
+                this.lastReaderThread = Thread.currentThread();
+
+                /* No data to read. If we have already read data and we allow returning partial
+                 * data then return the partial data */
+                if (!closed && !isReadable()) {
+                    if (allowPartial && (n > 0)) {
+                        return n;
+                    } else {
+                        awaitData();
+                    }
+                }
+
+                /*
+                 * If we are closed, return the number of bytes currently read. If no bytes have
+                 * yet been read, we want this to return -1 instead of 0.
+                 */
+                if (closed) {
+                    return (0 == n) ? -1 : n;
+                }
+
+                /* Read as much as we can in larger chunks (take advantage of arraycopy) */
+                int k = take(b, off + n, len - n);
+                n += k;
+
+                /* Notify anything else that might be waiting */
+                signalWaiters();
+
+                /* If we finally read everything, return cause we are done! */
+                if (n == len) {
+                    return n;
+                }
+                attempt = (k > 0) ? 0 : attempt + 1;
+            } finally {
+                lock.unlock();
+            }
+            waitStrategy.idle(attempt);
         }
+    }
+
+    /**
+     * Reads data from the buffer into the remaining space of <code>dst</code>, with the same
+     * blocking behavior as {@link #read(byte[])}. The bytes are copied straight from the backing
+     * store into <code>dst</code>.
+     *
+     * @param dst
+     *            the buffer to read into; its position is advanced past the bytes read
+     * @return the number of bytes read or <code>-1</code> if the buffer has been closed
+     * @throws InterruptedIOException
+     *             if the reading thread is interrupted while waiting for data
+     *
+     * @see java.nio.channels.ReadableByteChannel#read(ByteBuffer)
+     */
+    public int read(ByteBuffer dst) throws InterruptedIOException {
+        int off = 0;
+        int attempt = 0;
 
         while (true) {
-            /* No data to read. If we have already read data and we allow returning partial data
-             * then return the partial data */
-            if (used == 0) {
-                if (allowPartial && (off > 0)) {
-                    return off;
-                } else {
-                    try {
-                        this.wait();
-                    } catch (InterruptedException e) {
-                        throw new InterruptedIOException();
+            lock.lock();
+            try {
+                this.lastReaderThread = Thread.currentThread();
+
+                if (!closed && !isReadable()) {
+                    if (allowPartial && (off > 0)) {
+                        return off;
+                    } else {
+                        awaitData();
                     }
                 }
-            }
 
-            /*
-             * If we are closed, return the number of bytes currently read. If no bytes have yet
-             * been read, we want this to return -1 instead of 0.
-             */
-            if (closed) {
-                return (0 == off) ? -1 : off;
-            }
+                if (closed) {
+                    return (0 == off) ? -1 : off;
+                }
 
-            /* Read as much as we can in larger chunks (take advantage of arraycopy) */
-            while ((used > 0) && off < b.length) {
-                int len = isWrapped() ? buffer.length - start : used;
-                len = Math.min(len, b.length - off);
+                int k = take(dst);
+                off += k;
+                signalWaiters();
 
-                System.arraycopy(buffer, start, b, off, len);
-                off += len;
-                start = (start + len) % buffer.length;
-                used -= len;
+                if (!dst.hasRemaining()) {
+                    return off;
+                }
+                attempt = (k > 0) ? 0 : attempt + 1;
+            } finally {
+                lock.unlock();
             }
+            waitStrategy.idle(attempt);
+        }
+    }
 
-            /* Notify anything else that might be waiting */
-            this.notify();
+    /**
+     * Reads as much of the data that is available right now as fits into <code>b</code>, without
+     * waiting.
+     *
+     * @param b
+     *            the array to read into
+     * @return the number of bytes read, possibly zero, or <code>-1</code> if the buffer has been
+     *         closed
+     */
+    public int tryRead(byte[] b) {
+        return tryRead(b, 0, b.length);
+    }
 
-            /* If we finally read everything, return cause we are done! */
-            if (off == b.length) {
-                return off;
+    /**
+     * Reads as much of the data that is available right now as fits into <code>b</code>, starting
+     * at offset <code>off</code>, without waiting.
+     *
+     * @param b
+     *            the array to read into
+     * @param off
+     *            the offset to start storing bytes at
+     * @param len
+     *            the maximum number of bytes to read
+     * @return the number of bytes read, possibly zero, or <code>-1</code> if the buffer has been
+     *         closed
+     */
+    public int tryRead(byte[] b, int off, int len) {
+        lock.lock();
+        try {
+            checkBounds(b, off, len);
+            this.lastReaderThread = Thread.currentThread();
+            if (closed) {
+                return -1;
             }
+
+            int n = take(b, off, len);
+            signalWaiters();
+            return n;
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Gets the index of the end of the used data
-     * @return
+     * Reads data from the buffer into <code>b</code> like {@link #read(byte[])}, waiting for at
+     * most the given time for the data to arrive.
+     *
+     * @param b
+     *            the array to read into
+     * @param timeout
+     *            the longest time to wait
+     * @param unit
+     *            the unit of <code>timeout</code>
+     * @return the number of bytes read or <code>-1</code> if the buffer has been closed
+     * @throws CircularBufferTimeoutException
+     *             if the timeout elapsed before the read completed; the bytes that were read are
+     *             reported in its <code>bytesTransferred</code>
+     * @throws InterruptedIOException
+     *             if the reading thread is interrupted while waiting for data
      */
-    public int getEnd() {
-        return (start + used) % buffer.length;
+    public int read(byte[] b, long timeout, TimeUnit unit) throws InterruptedIOException {
+        return read(b, 0, b.length, timeout, unit);
     }
 
     /**
-     * Checks if the used data wraps around to the beginning of the buffer array.
-     * @return
+     * Reads data from the buffer into <code>b</code>, starting at offset <code>off</code>, like
+     * {@link #read(byte[], int, int)}, waiting for at most the given time for the data to arrive.
+     *
+     * @param b
+     *            the array to read into
+     * @param off
+     *            the offset to start storing bytes at
+     * @param len
+     *            the maximum number of bytes to read
+     * @param timeout
+     *            the longest time to wait
+     * @param unit
+     *            the unit of <code>timeout</code>
+     * @return the number of bytes read or <code>-1</code> if the buffer has been closed
+     * @throws CircularBufferTimeoutException
+     *             if the timeout elapsed before the read completed; the bytes that were read are
+     *             reported in its <code>bytesTransferred</code>
+     * @throws InterruptedIOException
+     *             if the reading thread is interrupted while waiting for data
      */
-    public boolean isWrapped() {
-        return used >= (buffer.length - start);
+    public int read(byte[] b, int off, int len, long timeout, TimeUnit unit)
+            throws InterruptedIOException {
+        checkBounds(b, off, len);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int n = 0;
+        int attempt = 0;
+
+        while (true) {
+            lock.lock();
+            try {
+                this.lastReaderThread = Thread.currentThread();
+
+                if (!closed && !isReadable()) {
+                    if (allowPartial && (n > 0)) {
+                        return n;
+                    } else {
+                        awaitData(deadline - System.nanoTime());
+                    }
+                }
+
+                if (closed) {
+                    return (0 == n) ? -1 : n;
+                }
+
+                int k = take(b, off + n, len - n);
+                n += k;
+                signalWaiters();
+
+                if (n == len) {
+                    return n;
+                }
+                if (deadline - System.nanoTime() <= 0) {
+                    throw new CircularBufferTimeoutException("Timed out waiting to read", n);
+                }
+                attempt = (k > 0) ? 0 : attempt + 1;
+            } finally {
+                lock.unlock();
+            }
+            waitStrategy.idle(attempt);
+        }
     }
 
-    /*
-     * (non-Javadoc)
-     * @see java.io.Closeable#close()
+    /**
+     * Fills the free space of the buffer straight from <code>src</code> with a single read on the
+     * channel, blocking first until there is some free space. When the free space wraps around the
+     * end of the buffer and <code>src</code> is a {@link ScatteringByteChannel}, both regions are
+     * filled by one scattering read.
+     * <p>
+     * The channel is read without holding this buffer's lock, so readers keep draining the buffer
+     * while the channel blocks. Other writers wait until the transfer is done.
+     *
+     * @param src
+     *            the channel to read from
+     * @return the number of bytes transferred, possibly zero, or <code>-1</code> if the channel has
+     *         reached end-of-stream
+     * @throws IOException
+     *             if there was a problem reading from the channel, or the calling thread is
+     *             interrupted while waiting for space
+     * @throws IllegalStateException
+     *             if the buffer has been closed
      */
-    public synchronized void close() {
-        this.closed = true;
-        this.notifyAll();
-        this.lastReaderThread = null;
+    public int transferFrom(ReadableByteChannel src) throws IOException {
+        ByteBuffer[] regions;
+        int attempt = 0;
+
+        while (true) {
+            lock.lock();
+            try {
+                while (waitStrategy.isBlocking() && !closed && !isWritable()) {
+                    block(true, Long.MAX_VALUE);
+                }
+                if (closed) {
+                    throw new IllegalStateException("Cannot write to a closed stream");
+                }
+
+                if (isWritable()) {
+                    regions = regions(getEnd(), capacity - used);
+                    writerBusy = true;
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+            waitStrategy.idle(attempt++);
+        }
+
+        long n = 0;
+        try {
+            if ((regions.length > 1) && (src instanceof ScatteringByteChannel)) {
+                n = ((ScatteringByteChannel) src).read(regions);
+            } else {
+                n = src.read(regions[0]);
+            }
+        } finally {
+            lock.lock();
+            try {
+                writerBusy = false;
+                if (n > 0) {
+                    used += n;
+                    store.checkpoint(start, used);
+                    written(n);
+                }
+                signalAllWaiters();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return (int) n;
+    }
+
+    /**
+     * Drains the readable data of the buffer straight into <code>target</code> with a single write
+     * on the channel, blocking first until there is data available. When the data wraps around the
+     * end of the buffer and <code>target</code> is a {@link GatheringByteChannel}, both regions are
+     * written by one gathering write.
+     * <p>
+     * The channel is written without holding this buffer's lock, so writers keep filling the
+     * buffer while the channel blocks. Other readers wait until the transfer is done.
+     *
+     * @param target
+     *            the channel to write to
+     * @return the number of bytes transferred, possibly zero, or <code>-1</code> if the buffer has
+     *         been closed
+     * @throws IOException
+     *             if there was a problem writing to the channel, or the calling thread is
+     *             interrupted while waiting for data
+     */
+    public int transferTo(WritableByteChannel target) throws IOException {
+        ByteBuffer[] regions;
+        int attempt = 0;
+
+        while (true) {
+            lock.lock();
+            try {
+                this.lastReaderThread = Thread.currentThread();
+                while (waitStrategy.isBlocking() && !closed && !isReadable()) {
+                    awaitData();
+                }
+                if (closed) {
+                    return -1;
+                }
+
+                if (isReadable()) {
+                    regions = regions(start, used);
+                    readerBusy = true;
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+            waitStrategy.idle(attempt++);
+        }
+
+        long n = 0;
+        try {
+            if ((regions.length > 1) && (target instanceof GatheringByteChannel)) {
+                n = ((GatheringByteChannel) target).write(regions);
+            } else {
+                n = target.write(regions[0]);
+            }
+        } finally {
+            lock.lock();
+            try {
+                readerBusy = false;
+                if (n > 0) {
+                    start = (int) ((start + n) % capacity);
+                    used -= n;
+                    store.checkpoint(start, used);
+                    taken(n);
+                }
+                signalAllWaiters();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return (int) n;
+    }
+
+    /**
+     * Hands up to <code>maxBytes</code> of the readable data to <code>handler</code> in place,
+     * blocking first until there is data available. The data is passed as a read-only view, or as
+     * two views if it wraps around the end of the buffer, all within one critical section, and the
+     * read cursor is advanced once by however much the handler consumed. This lets a consumer parse
+     * straight out of the ring without copying and without taking the lock for every small read.
+     * <p>
+     * The second view is only offered if the handler consumed all of the first. Writers wait while
+     * the handler runs, so it should be quick.
+     *
+     * @param handler
+     *            receives the views and consumes data by advancing their positions
+     * @param maxBytes
+     *            the most bytes to hand to the handler
+     * @return the number of bytes consumed, possibly zero, or <code>-1</code> if the buffer has
+     *         been closed
+     * @throws InterruptedIOException
+     *             if the calling thread is interrupted while waiting for data
+     */
+    public int drain(ByteChunkHandler handler, int maxBytes) throws InterruptedIOException {
+        int attempt = 0;
+
+        while (true) {
+            lock.lock();
+            try {
+                this.lastReaderThread = Thread.currentThread();
+                while (waitStrategy.isBlocking() && !closed && !isReadable()) {
+                    awaitData();
+                }
+                if (closed) {
+                    return -1;
+                }
+
+                if (isReadable()) {
+                    int consumed = 0;
+                    try {
+                        for (ByteBuffer region : regions(start, Math.min(used, maxBytes))) {
+                            ByteBuffer chunk = region.asReadOnlyBuffer();
+                            handler.onChunk(chunk);
+                            consumed += chunk.position();
+                            if (chunk.hasRemaining()) {
+                                break;
+                            }
+                        }
+                    } finally {
+                        start = (start + consumed) % capacity;
+                        used -= consumed;
+                        store.checkpoint(start, used);
+                        taken(consumed);
+                        signalWaiters();
+                    }
+                    return consumed;
+                }
+            } finally {
+                lock.unlock();
+            }
+            waitStrategy.idle(attempt++);
+        }
+    }
+
+    /**
+     * Reserves up to <code>n</code> bytes of the free space for the calling thread to write into in
+     * place, blocking first until there is some free space. The reservation is returned as a
+     * writable view straight into the buffer, whose position is zero and whose limit is the number
+     * of bytes reserved. That is less than <code>n</code> when the free space is smaller or wraps
+     * around the end of the buffer; in that case write what fits, {@link #commit(int)} it and claim
+     * the rest.
+     * <p>
+     * Nothing written to the view is visible to readers until it is committed. Until then readers
+     * keep draining the buffer, but other writers wait, so the claim should be committed promptly.
+     * A claim never discards data, even in overwrite mode.
+     *
+     * @param n
+     *            the number of bytes wanted
+     * @return a view of the reserved space
+     * @throws InterruptedIOException
+     *             if the calling thread is interrupted while waiting for space
+     * @throws IllegalArgumentException
+     *             if <code>n</code> is not positive
+     * @throws IllegalStateException
+     *             if the buffer has been closed, or the calling thread has not committed its
+     *             previous claim
+     */
+    public ByteBuffer claim(int n) throws InterruptedIOException {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Cannot claim " + n + " bytes");
+        }
+        int attempt = 0;
+
+        while (true) {
+            lock.lock();
+            try {
+                if (claimer == Thread.currentThread()) {
+                    throw new IllegalStateException("The previous claim has not been committed");
+                }
+                while (waitStrategy.isBlocking() && !closed && !isWritable()) {
+                    block(true, Long.MAX_VALUE);
+                }
+                if (closed) {
+                    throw new IllegalStateException("Cannot write to a closed stream");
+                }
+
+                if (isWritable()) {
+                    claimed = Math.min(capacity - (isWrapped() ? used : start + used), n);
+                    claimer = Thread.currentThread();
+                    writerBusy = true;
+                    return store.view(getEnd(), claimed);
+                }
+            } finally {
+                lock.unlock();
+            }
+            waitStrategy.idle(attempt++);
+        }
+    }
+
+    /**
+     * Publishes the first <code>n</code> bytes of the calling thread's claim to readers and
+     * releases the rest of it. Committing zero bytes abandons the claim.
+     *
+     * @param n
+     *            the number of bytes written into the claimed view
+     * @throws IllegalArgumentException
+     *             if <code>n</code> is negative or larger than the claim
+     * @throws IllegalStateException
+     *             if the calling thread holds no claim
+     */
+    public void commit(int n) {
+        lock.lock();
+        try {
+            if (claimer != Thread.currentThread()) {
+                throw new IllegalStateException("There is no claim to commit");
+            }
+            if ((n < 0) || (n > claimed)) {
+                throw new IllegalArgumentException("Cannot commit " + n + " of " + claimed
+                        + " claimed bytes");
+            }
+
+            claimer = null;
+            claimed = 0;
+            writerBusy = false;
+            used += n;
+            store.checkpoint(start, used);
+            written(n);
+            signalAllWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks that <code>off</code> and <code>len</code> describe a range within <code>b</code>.
+     *
+     * @throws IndexOutOfBoundsException
+     *             if they do not
+     */
+    static void checkBounds(byte[] b, int off, int len) {
+        if ((off < 0) || (len < 0) || (len > b.length - off)) {
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", length="
+                    + b.length);
+        }
+    }
+
+    /**
+     * If we are full and use the {@link WaitStrategy#BLOCKING} strategy, block until something is
+     * read. Polling strategies wait outside of the lock instead, so this returns straight away.
+     * Must be called while holding the lock.
+     *
+     * @return <code>false</code> if we timed out waiting for space
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     * @throws IllegalStateException
+     *             if the buffer is closed
+     */
+    private boolean awaitSpace() throws InterruptedIOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT_MS);
+
+        /* Another writer may take the space we were woken for, so keep waiting until the deadline */
+        while (!awaitSpace(deadline - System.nanoTime())) {
+            if (deadline - System.nanoTime() > 0) {
+                continue;
+            }
+            logger.error("timed out waiting to write buffer: " + this);
+            // For trouble-shooting why the reader thread is not reading
+            if (lastReaderThread != null) {
+                this.dumpStackTrace(lastReaderThread.getStackTrace());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * If we are full and use the {@link WaitStrategy#BLOCKING} strategy, block for at most
+     * <code>nanos</code> until something is read. Must be called while holding the lock.
+     *
+     * @return <code>false</code> if we blocked and there is still no space
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     * @throws IllegalStateException
+     *             if the buffer is closed
+     */
+    private boolean awaitSpace(long nanos) throws InterruptedIOException {
+        boolean writable = true;
+        if (waitStrategy.isBlocking() && !isWritable() && !canOverwrite() && !canGrow()) {
+            if (nanos > 0) {
+                block(true, nanos);
+            }
+            writable = isWritable();
+        }
+
+        /* If we are closed, throw and IllegalStateException */
+        if (closed) {
+            throw new IllegalStateException("Cannot write to a closed stream");
+        }
+        return writable;
+    }
+
+    /**
+     * If we use the {@link WaitStrategy#BLOCKING} strategy, block until something is written or the
+     * buffer is closed. Polling strategies wait outside of the lock instead, so this returns
+     * straight away. Must be called while holding the lock.
+     *
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     */
+    private void awaitData() throws InterruptedIOException {
+        if (waitStrategy.isBlocking()) {
+            block(false, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Like {@link #awaitData()}, but block for at most <code>nanos</code>. Must be called while
+     * holding the lock.
+     *
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     */
+    private void awaitData(long nanos) throws InterruptedIOException {
+        if (waitStrategy.isBlocking() && (nanos > 0)) {
+            block(false, nanos);
+        }
+    }
+
+    /**
+     * Wait on <code>notFull</code> if <code>producer</code> is set, or <code>notEmpty</code>
+     * otherwise, for at most <code>nanos</code>, or until signalled if it is
+     * {@link Long#MAX_VALUE}, and count the wait as a producer or consumer stall. Must be called
+     * while holding the lock.
+     *
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     */
+    private void block(boolean producer, long nanos) throws InterruptedIOException {
+        Condition condition = producer ? notFull : notEmpty;
+        long begin = System.nanoTime();
+        try {
+            if (nanos == Long.MAX_VALUE) {
+                condition.await();
+            } else {
+                condition.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            /* Pass on a signal that may have been meant for us */
+            condition.signal();
+            throw new InterruptedIOException();
+        } finally {
+            long blocked = System.nanoTime() - begin;
+            if (producer) {
+                producerBlocks++;
+                producerBlockedNanos += blocked;
+            } else {
+                consumerBlocks++;
+                consumerBlockedNanos += blocked;
+            }
+        }
+    }
+
+    /**
+     * Wake one writer if there is free space and one reader if there is data. A thread that is
+     * woken does the same once it has moved data, so the wake-ups cascade to as many waiters as can
+     * make progress without waking any that cannot. Must be called while holding the lock.
+     */
+    private void signalWaiters() {
+        if (used > 0) {
+            notEmpty.signal();
+        }
+        if ((used < capacity) || overwrite) {
+            notFull.signal();
+        }
+    }
+
+    /**
+     * Wake every waiting writer and reader, after a change that more than one of them may need to
+     * see, such as closing the buffer or the end of a transfer. Must be called while holding the
+     * lock.
+     */
+    private void signalAllWaiters() {
+        notFull.signalAll();
+        notEmpty.signalAll();
+    }
+
+    /**
+     * Checks if a writer may add data right now.
+     */
+    private boolean isWritable() {
+        return (used < capacity) && !writerBusy;
+    }
+
+    /**
+     * Checks if a reader may take data right now.
+     */
+    private boolean isReadable() {
+        return (used > 0) && !readerBusy;
+    }
+
+    /**
+     * Checks if the buffer may grow instead of making a writer wait for space. It cannot while a
+     * transfer or claim holds views of the current store.
+     */
+    private boolean canGrow() {
+        return (elastic != null) && (capacity < elastic.getMaxCapacity()) && !writerBusy
+                && !readerBusy;
+    }
+
+    /**
+     * If the capacity is elastic and <code>len</code> more bytes would take the unread data past
+     * the high-water mark, grow the buffer. Must be called while holding the lock.
+     */
+    private void grow(int len) {
+        long needed = (long) used + len;
+        if (canGrow() && elastic.isAboveHighWater(needed, capacity)) {
+            resize(elastic.grownCapacity(capacity, needed));
+        }
+    }
+
+    /**
+     * If the capacity is elastic and the unread data has stayed below the high-water mark of the
+     * minimum capacity for the idle time, shrink the buffer back to the minimum capacity. Must be
+     * called while holding the lock.
+     */
+    private void shrinkIfIdle() {
+        if ((elastic == null) || (capacity == elastic.getMinCapacity()) || writerBusy
+                || readerBusy || elastic.isAboveHighWater(used, elastic.getMinCapacity())) {
+            return;
+        }
+        if (System.nanoTime() - lastHighNanos >= elastic.getIdleTime(TimeUnit.NANOSECONDS)) {
+            resize(elastic.getMinCapacity());
+        }
+    }
+
+    /**
+     * Update the statistics after <code>n</code> bytes were read, and shrink the buffer if it has
+     * been idle. Must be called while holding the lock.
+     */
+    private void taken(long n) {
+        bytesOut += n;
+        shrinkIfIdle();
+    }
+
+    /**
+     * Move the unread data to the front of a new store of the given capacity. Must be called while
+     * holding the lock, and never while a transfer or claim holds views of the current store.
+     */
+    private void resize(int newCapacity) {
+        ByteStore resized = new HeapByteStore(newCapacity);
+        int first = Math.min(used, capacity - start);
+        resized.put(0, store.view(start, first), first);
+        resized.put(first, store.view(0, used - first), used - first);
+
+        store.close();
+        store = resized;
+        capacity = newCapacity;
+        start = 0;
+        store.checkpoint(start, used);
+        resizeCount++;
+    }
+
+    /**
+     * Update the statistics after <code>n</code> bytes were added. Must be called while holding
+     * the lock.
+     */
+    private void written(long n) {
+        bytesIn += n;
+        if (used > peakUsed) {
+            peakUsed = used;
+        }
+        if ((elastic != null) && elastic.isAboveHighWater(used, elastic.getMinCapacity())) {
+            lastHighNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Checks if a writer may discard old data to make room instead of waiting for space. A writer
+     * filling the buffer from a channel still has to be waited for.
+     */
+    private boolean canOverwrite() {
+        return overwrite && !writerBusy;
+    }
+
+    /**
+     * In overwrite mode, discard as much of the oldest data as is needed to fit <code>len</code>
+     * new bytes. If there is more new data than the whole buffer holds, or the oldest data is being
+     * drained by {@link #transferTo(WritableByteChannel)} and cannot be discarded, the head of the
+     * new data is dropped instead. Must be called while holding the lock.
+     *
+     * @return the number of bytes at the head of the new data to drop
+     */
+    private int makeRoom(int len) {
+        int excess = len - (capacity - used);
+        if (!canOverwrite() || (excess <= 0)) {
+            return 0;
+        }
+
+        int discard = readerBusy ? 0 : Math.min(excess, used);
+        start = (start + discard) % capacity;
+        used -= discard;
+        droppedBytes += excess;
+        return excess - discard;
+    }
+
+    /**
+     * Copy as much of <code>b</code> as fits into the free space, in at most two chunks. In
+     * overwrite mode the oldest data is discarded first to make room. Must be called while holding
+     * the lock.
+     *
+     * @return the number of bytes copied or dropped
+     */
+    private int put(byte[] b, int off, int len) {
+        grow(len);
+        int total = makeRoom(len);
+        total += append(b, off + total, len - total);
+
+        store.checkpoint(start, used);
+        written(total);
+        return total;
+    }
+
+    /**
+     * Copy as much of <code>src</code> as fits into the free space, in at most two chunks. In
+     * overwrite mode the oldest data is discarded first to make room. Must be called while holding
+     * the lock.
+     *
+     * @return the number of bytes copied or dropped
+     */
+    private int put(ByteBuffer src) {
+        grow(src.remaining());
+        int total = makeRoom(src.remaining());
+        src.position(src.position() + total);
+        total += append(src);
+
+        store.checkpoint(start, used);
+        written(total);
+        return total;
+    }
+
+    /**
+     * Copy as much of the readable data as fits into <code>b</code>, in at most two chunks. Must
+     * be called while holding the lock.
+     *
+     * @return the number of bytes copied
+     */
+    private int take(byte[] b, int off, int len) {
+        int total = 0;
+
+        while (isReadable() && (total < len)) {
+            int n = Math.min(isWrapped() ? capacity - start : used, len - total);
+
+            store.get(start, b, off + total, n);
+            total += n;
+            start = (start + n) % capacity;
+            used -= n;
+        }
+
+        store.checkpoint(start, used);
+        taken(total);
+        return total;
+    }
+
+    /**
+     * Copy as much of the readable data as fits into <code>dst</code>, in at most two chunks. Must
+     * be called while holding the lock.
+     *
+     * @return the number of bytes copied
+     */
+    private int take(ByteBuffer dst) {
+        int total = 0;
+
+        while (isReadable() && dst.hasRemaining()) {
+            int n = Math.min(isWrapped() ? capacity - start : used, dst.remaining());
+
+            store.get(start, dst, n);
+            total += n;
+            start = (start + n) % capacity;
+            used -= n;
+        }
+
+        store.checkpoint(start, used);
+        taken(total);
+        return total;
+    }
+
+    /**
+     * Copy as much of <code>b</code> as fits into the free space, in at most two chunks, without
+     * discarding old data or publishing the new data to the store and the statistics. The caller
+     * finishes with {@link #appended(int)}. Must be called while holding the lock.
+     *
+     * @return the number of bytes copied
+     */
+    int append(byte[] b, int off, int len) {
+        int total = 0;
+
+        while (isWritable() && (total < len)) {
+            int n = Math.min(capacity - (isWrapped() ? used : start + used), len - total);
+
+            store.put(getEnd(), b, off + total, n);
+            total += n;
+            used += n;
+        }
+        return total;
+    }
+
+    /**
+     * Copy as much of <code>src</code> as fits into the free space like
+     * {@link #append(byte[], int, int)}. Must be called while holding the lock.
+     *
+     * @return the number of bytes copied
+     */
+    int append(ByteBuffer src) {
+        int total = 0;
+
+        while (isWritable() && src.hasRemaining()) {
+            int n = Math.min(capacity - (isWrapped() ? used : start + used), src.remaining());
+
+            store.put(getEnd(), src, n);
+            total += n;
+            used += n;
+        }
+        return total;
+    }
+
+    /**
+     * Publish <code>n</code> bytes added by {@link #append(byte[], int, int)} to the store and the
+     * statistics. Must be called while holding the lock.
+     */
+    void appended(int n) {
+        store.checkpoint(start, used);
+        written(n);
+    }
+
+    /**
+     * Copy <code>len</code> bytes of the readable data, starting <code>skip</code> bytes past the
+     * oldest, into <code>b</code> without consuming them. The caller must have checked that there
+     * is that much data. Must be called while holding the lock.
+     */
+    void peek(int skip, byte[] b, int off, int len) {
+        int index = (start + skip) % capacity;
+        int first = Math.min(len, capacity - index);
+
+        store.get(index, b, off, first);
+        if (first < len) {
+            store.get(0, b, off + first, len - first);
+        }
+    }
+
+    /**
+     * Consume the oldest <code>n</code> bytes of the readable data, which the caller has already
+     * looked at with {@link #peek(int, byte[], int, int)}. Must be called while holding the lock.
+     */
+    void skip(int n) {
+        start = (start + n) % capacity;
+        used -= n;
+        store.checkpoint(start, used);
+        taken(n);
+    }
+
+    /**
+     * Get the number of bytes that can be added right now. Must be called while holding the lock.
+     */
+    int getFree() {
+        return capacity - used;
+    }
+
+    /**
+     * Get the lock guarding this buffer, which {@link FramedCircularBuffer} holds around the
+     * unlocked operations above.
+     */
+    ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Get views over the <code>len</code> bytes of the store beginning at <code>index</code>, as
+     * one view or, if they wrap around the end of the store, two.
+     */
+    private ByteBuffer[] regions(int index, int len) {
+        int first = Math.min(len, capacity - index);
+        if (first == len) {
+            return new ByteBuffer[] { store.view(index, len) };
+        }
+        return new ByteBuffer[] { store.view(index, first), store.view(0, len - first) };
+    }
+
+    /**
+     * Gets the index of the end of the used data
+     * @return
+     */
+    public int getEnd() {
+        return (start + used) % capacity;
+    }
+
+    /**
+     * Checks if the used data wraps around to the beginning of the buffer array.
+     * @return
+     */
+    public boolean isWrapped() {
+        return used >= (capacity - start);
+    }
+
+    /**
+     * Returns <code>true</code> if threads waiting for the lock get it in arrival order.
+     *
+     * @return <code>true</code> if the lock is fair
+     */
+    public boolean isFair() {
+        return lock.isFair();
+    }
+
+    /**
+     * Get the strategy readers and writers use to wait while the buffer is empty or full.
+     *
+     * @return the wait strategy
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Turn overwrite mode on or off. In overwrite mode a write never waits for a reader: if there
+     * is not enough free space, the oldest data in the buffer is discarded to make room, and if the
+     * data written is larger than the buffer only its last {@link #getCapacity()} bytes are kept.
+     * The exception is {@link #transferFrom(ReadableByteChannel)}, which only ever fills the free
+     * space, and which other writers still wait for.
+     *
+     * @param overwrite
+     *            <code>true</code> to discard the oldest data instead of waiting for space
+     */
+    public void setOverwrite(boolean overwrite) {
+        lock.lock();
+        try {
+            this.overwrite = overwrite;
+            signalAllWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this buffer is in overwrite mode.
+     *
+     * @return <code>true</code> if writes discard the oldest data instead of waiting for space
+     * @see #setOverwrite(boolean)
+     */
+    public boolean isOverwrite() {
+        lock.lock();
+        try {
+            return overwrite;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the total number of bytes that have been discarded in overwrite mode, either old data
+     * that was overwritten before it was read or new data that did not fit.
+     *
+     * @return the number of bytes dropped
+     */
+    public long getDroppedBytes() {
+        lock.lock();
+        try {
+            return droppedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of bytes this buffer can hold.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the policy by which the capacity grows and shrinks.
+     *
+     * @return the policy, or <code>null</code> if the capacity is fixed
+     */
+    public ElasticPolicy getElasticPolicy() {
+        return elastic;
+    }
+
+    /**
+     * Get the number of times an elastic buffer has grown or shrunk.
+     *
+     * @return the number of resizes
+     */
+    public int getResizeCount() {
+        lock.lock();
+        try {
+            return resizeCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the largest number of unread bytes the buffer has held at once.
+     *
+     * @return the peak occupancy
+     */
+    public int getPeakUsed() {
+        lock.lock();
+        try {
+            return peakUsed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of bytes that have been written but not yet read.
+     *
+     * @return the number of unread bytes
+     */
+    public int getUsed() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularBufferMXBean#getBytesIn()
+     */
+    public long getBytesIn() {
+        lock.lock();
+        try {
+            return bytesIn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularBufferMXBean#getBytesOut()
+     */
+    public long getBytesOut() {
+        lock.lock();
+        try {
+            return bytesOut;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularBufferMXBean#getProducerBlockCount()
+     */
+    public long getProducerBlockCount() {
+        lock.lock();
+        try {
+            return producerBlocks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularBufferMXBean#getProducerBlockedNanos()
+     */
+    public long getProducerBlockedNanos() {
+        lock.lock();
+        try {
+            return producerBlockedNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularBufferMXBean#getConsumerBlockCount()
+     */
+    public long getConsumerBlockCount() {
+        lock.lock();
+        try {
+            return consumerBlocks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularBufferMXBean#getConsumerBlockedNanos()
+     */
+    public long getConsumerBlockedNanos() {
+        lock.lock();
+        try {
+            return consumerBlockedNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publish this buffer's statistics with the platform MBean server as a
+     * {@link CircularBufferMXBean} named
+     * <code>com.comcast.pantry.io:type=CircularBuffer,name=</code><i>name</i>. The buffer is
+     * unregistered again when it is closed.
+     *
+     * @param name
+     *            a name for the buffer, unique among the registered buffers
+     * @return the name the buffer was registered under
+     * @throws JMException
+     *             if a buffer is already registered under that name
+     * @throws IllegalStateException
+     *             if this buffer is already registered
+     */
+    public ObjectName register(String name) throws JMException {
+        lock.lock();
+        try {
+            if (objectName != null) {
+                throw new IllegalStateException("Already registered as " + objectName);
+            }
+            ObjectName on = new ObjectName("com.comcast.pantry.io:type=CircularBuffer,name="
+                    + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(this, CircularBufferMXBean.class, true), on);
+            objectName = on;
+            return on;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove this buffer's statistics from the platform MBean server, if they were published with
+     * {@link #register(String)}.
+     */
+    public void unregister() {
+        lock.lock();
+        try {
+            if (objectName == null) {
+                return;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn("failed to unregister " + objectName, e);
+            }
+            objectName = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (!closed) {
+                store.close();
+                unregister();
+            }
+            this.closed = true;
+            signalAllWaiters();
+            this.lastReaderThread = null;
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -20,22 +20,26 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * A {@link InputStream} compatible reference to a {@link CircularBuffer}.
+ * A {@link InputStream} compatible reference to a {@link CircularBuffer} or any other
+ * {@link ByteRing}.
  *
  * @author Clark Malmgren
  */
 public class CircularBufferInputStream extends InputStream {
 
-    private CircularBuffer buffer;
+    private ByteRing buffer;
+
+    /** Reused by {@link #read()} so that single byte reads do not allocate */
+    private final byte[] single = new byte[1];
 
     /**
      * Construct a new {@link CircularBufferInputStream} to read from the given
-     * {@link CircularBuffer}.
+     * {@link ByteRing}, such as a {@link CircularBuffer}.
      *
      * @param buffer
      *            the buffer to read from
      */
-    public CircularBufferInputStream(CircularBuffer buffer) {
+    public CircularBufferInputStream(ByteRing buffer) {
         this.buffer = buffer;
     }
 
@@ -45,12 +49,13 @@ public class CircularBufferInputStream extends InputStream {
      */
     @Override
     public int read() throws IOException {
-        byte[] b = new byte[1];
-        int len = buffer.read(b);
-        if (len != 1) {
-            return -1;
+        synchronized (single) {
+            int len = buffer.read(single, 0, 1);
+            if (len != 1) {
+                return -1;
+            }
+            return single[0] & 0xFF;
         }
-        return b[0];
     }
 
     /*
@@ -76,13 +81,10 @@ public class CircularBufferInputStream extends InputStream {
      */
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        byte[] buff = new byte[len];
-        int actual = buffer.read(buff);
-        /* Only do the arraycopy if there was something to read */
-        if (actual > 0) {
-            System.arraycopy(buff, 0, b, off, actual);
+        if (len == 0) {
+            return 0;
         }
-        return actual;
+        return buffer.read(b, off, len);
     }
 
 }
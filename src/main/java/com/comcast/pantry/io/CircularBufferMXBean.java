@@ -0,0 +1,105 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+/**
+ * The statistics of a {@link CircularBuffer} as seen through JMX, once the buffer has been given a
+ * name with {@link CircularBuffer#register(String)}. Every counter is cumulative since the buffer
+ * was created, so rates are found by sampling twice and taking the difference.
+ * <p>
+ * The bytes written always add up: <code>BytesIn == BytesOut + Used + DroppedBytes</code>.
+ */
+public interface CircularBufferMXBean {
+
+    /**
+     * Get the number of bytes the buffer can hold.
+     *
+     * @return the capacity
+     */
+    int getCapacity();
+
+    /**
+     * Get the number of bytes that have been written but not yet read.
+     *
+     * @return the number of unread bytes
+     */
+    int getUsed();
+
+    /**
+     * Get the largest number of unread bytes the buffer has held at once.
+     *
+     * @return the peak occupancy
+     */
+    int getPeakUsed();
+
+    /**
+     * Get the total number of bytes that have been written, including any that were dropped in
+     * overwrite mode.
+     *
+     * @return the number of bytes written
+     */
+    long getBytesIn();
+
+    /**
+     * Get the total number of bytes that have been read.
+     *
+     * @return the number of bytes read
+     */
+    long getBytesOut();
+
+    /**
+     * Get the total number of bytes that have been discarded in overwrite mode.
+     *
+     * @return the number of bytes dropped
+     */
+    long getDroppedBytes();
+
+    /**
+     * Get the number of times a writer blocked because the buffer was full.
+     *
+     * @return the number of producer stalls
+     */
+    long getProducerBlockCount();
+
+    /**
+     * Get the total time writers spent blocked because the buffer was full.
+     *
+     * @return the producer stall time in nanoseconds
+     */
+    long getProducerBlockedNanos();
+
+    /**
+     * Get the number of times a reader blocked because the buffer was empty.
+     *
+     * @return the number of consumer stalls
+     */
+    long getConsumerBlockCount();
+
+    /**
+     * Get the total time readers spent blocked because the buffer was empty.
+     *
+     * @return the consumer stall time in nanoseconds
+     */
+    long getConsumerBlockedNanos();
+
+    /**
+     * Returns <code>true</code> until the buffer is closed.
+     *
+     * @return <code>true</code> if the buffer is open
+     */
+    boolean isOpen();
+}
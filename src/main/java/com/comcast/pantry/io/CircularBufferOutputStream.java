@@ -20,22 +20,26 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 /**
- * A {@link OutputStream} compatible reference to a {@link CircularBuffer}.
+ * A {@link OutputStream} compatible reference to a {@link CircularBuffer} or any other
+ * {@link ByteRing}.
  *
  * @author Clark Malmgren
  */
 public class CircularBufferOutputStream extends OutputStream {
 
-    private CircularBuffer buffer;
+    private ByteRing buffer;
+
+    /** Reused by {@link #write(int)} so that single byte writes do not allocate */
+    private final byte[] single = new byte[1];
 
     /**
      * Construct a new {@link CircularBufferOutputStream} to write to the given
-     * {@link CircularBuffer}.
+     * {@link ByteRing}, such as a {@link CircularBuffer}.
      *
      * @param buffer
      *            the buffer to write to
      */
-    public CircularBufferOutputStream(CircularBuffer buffer) {
+    public CircularBufferOutputStream(ByteRing buffer) {
         this.buffer = buffer;
     }
 
@@ -45,9 +49,10 @@ public class CircularBufferOutputStream extends OutputStream {
      */
     @Override
     public void write(int b) throws IOException {
-        byte[] buff = new byte[1];
-        buff[0] = (byte) b;
-        buffer.write(buff);
+        synchronized (single) {
+            single[0] = (byte) b;
+            buffer.write(single, 0, 1);
+        }
     }
 
     /*
@@ -74,9 +79,7 @@ public class CircularBufferOutputStream extends OutputStream {
      */
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        byte[] buff = new byte[len];
-        System.arraycopy(b, off, buff, 0, len);
-        write(buff);
+        buffer.write(b, off, len);
     }
 
 }
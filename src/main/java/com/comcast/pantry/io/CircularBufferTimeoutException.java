@@ -0,0 +1,43 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown by the timed reads and writes of {@link CircularBuffer} when the timeout elapses before
+ * the whole transfer could be made. Like {@link java.net.SocketTimeoutException}, the number of
+ * bytes that were moved before the timeout is available in {@link #bytesTransferred}, so the
+ * caller can resume the transfer where it stopped.
+ */
+public class CircularBufferTimeoutException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 6143938276164632785L;
+
+    /**
+     * Construct a new exception.
+     *
+     * @param message
+     *            the detail message
+     * @param bytesTransferred
+     *            the number of bytes moved before the timeout elapsed
+     */
+    public CircularBufferTimeoutException(String message, int bytesTransferred) {
+        super(message);
+        this.bytesTransferred = bytesTransferred;
+    }
+}
@@ -16,44 +16,43 @@
 
 package com.comcast.pantry.io;
 
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 import org.apache.log4j.Logger;
 
 /**
- * This is a circular buffer {@link #start} and {{@link #end} point to
- * the head and tail of the buffer respectively. The buffer acts a queue(FIFO)
- * Deletions are done from the head/start. Insertion are done from the tail/end
+ * This is a circular buffer {@link #getDataStartIndex() start} and
+ * {@link #getDataEndIndex() end} point to the head and tail of the buffer respectively. The buffer
+ * acts a queue(FIFO) Deletions are done from the head/start. Insertion are done from the tail/end
  *
  *
  * This is a fixed size buffer of size that is given in {@link CircularQueue#CircularQueue(int)}
+ * <p>
+ * For rolling windows of numbers, {@link LongCircularQueue}, {@link IntCircularQueue} and
+ * {@link DoubleCircularQueue} keep the same addressing over primitive arrays. To look values up by
+ * when they were added, use {@link TimestampedCircularQueue}, and to search lines of text,
+ * {@link SearchableCircularQueue}.
+ * <p>
+ * Runs of values can be read at once with {@link #copyRange(long, long, Object[])}, which checks
+ * the range once and copies it with at most two array copies, or walked with {@link #iterator()},
+ * oldest first. The iterator is fail-fast: it throws a {@link ConcurrentModificationException} if
+ * the queue is changed while it is in use.
+ * <p>
+ * This class is not thread safe. To share a queue between one appending thread and many readers
+ * without a lock, use {@link ConcurrentCircularQueue}.
  *
+ * @param <T>
+ *            the type of the values
  * @author panand200
  *
  */
-public class CircularQueue {
-
-    /** Points to where Queue starts */
-    private int start;
-
-    /** Points to end, where the last value is stored */
-    private int end;
-
-    /**
-     * <P>
-     * Maintains the actual index of the data. That is, it keeps track of what
-     * values could have possibly been overwritten. Example if we have a queue
-     * of size 10 (index 0-9) and we add 15 lines. The actual range of valid data will now
-     * be 5-15 where {@link #dataStart} will represent 5 and {@link #dataEnd} will represent 15.
-     * <p>
-     */
-    private int dataStart;
-    private int dataEnd;
+public class CircularQueue<T> extends AbstractCircularQueue implements Iterable<T> {
 
-    /** Maintains the number of elements currently in the queue */
-    private int count;
-    public static final int DEFAULT_MAX_SIZE = 20000;
-    private int maxSize = DEFAULT_MAX_SIZE;
-    // String buffer
-    private String[] queue;
+    // value buffer
+    private Object[] queue;
 
     private static Logger logger = Logger.getLogger(CircularQueue.class);
 
@@ -63,104 +62,32 @@ public class CircularQueue {
      * @param size
      */
     public CircularQueue(int size) {
-        maxSize = size;
-        init();
+        super(size);
     }
 
     /**
      * Creates a circular queue with default size as {@link #DEFAULT_MAX_SIZE}
      */
     public CircularQueue() {
-        init();
+        this(DEFAULT_MAX_SIZE);
     }
 
-    /**
-     * Initializes the indexes.
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.AbstractCircularQueue#allocate(int)
      */
-    protected void init() {
-        queue = new String[maxSize];
-        start = 0;
-        end = -1;
-        dataStart = 0;
-        dataEnd = -1; //After we've inserted data, we increment the value.
+    @Override
+    protected void allocate(int size) {
+        queue = new Object[size];
     }
 
-    /**
-     * Find if this index is in the range of the actual data in the queue. This
-     * function will first check to see if the index is in range of where the
-     * actual data lies. i.e. whether the index we're looking for was
-     * overwritten or not See {{@link #dataEnd} and {{@link #dataEnd} It will
-     * then get a relativeIndex value {{@link #getRelativeIndex(int)} incase  dataEnd
-     * has surpassed the queueEnd, and finally it will check to
-     * see if this index is in range with the current {@link #start} and {@link #end}
-     *
-     * @param no the index to check if it is in range
-     * @return boolean
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.AbstractCircularQueue#release(int)
      */
-    protected boolean inRange(int no) {
-
-        /*
-         * There can be three scenarios 1- start<end - This is when the tail
-         * hasn't completed a circle yet and it is less than the max size
-         *
-         * 2- start>end This is when the tail hit the max size and the head
-         * started deleting so it's completed a circle
-         *
-         * 3 - start == end this is when either the queue is empty or full
-         */
-
-        if (!isIndexInDataRange(no))
-            return false;
-
-        int index = getRelativeIndex(no);
-
-        if (start < end) {
-            return (start <= index && index <= end);
-        }
-
-        if (start > end) {
-            // get the range between start and max size
-            if (index <= (maxSize - 1) && index >= start) {
-                return true;
-            }
-
-            if (index <= end && index >= 0) {
-                return true;
-            }
-        }
-
-        if (start == end && index == start) {
-            return true;
-        }
-
-        return false;
-
-    }
-
-    /**
-     * Checks to see if the queue is full. Return a boolean accordingly.
-     *
-     * @return
-     *      boolean
-     */
-    public boolean isFull() {
-        if (count == (this.maxSize)) {
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Check to see if the queue is empty.
-     *
-     * @return
-     *      boolean
-     */
-    public boolean isEmpty() {
-        if (count == 0)
-            return true;
-
-        return false;
+    @Override
+    protected void release(int slot) {
+        queue[slot] = null;
     }
 
     /**
@@ -182,152 +109,125 @@ public class CircularQueue {
      * @return
      *      true if value was inserted, false otherwise
      */
-    public boolean add(String value) {
+    public boolean add(T value) {
 
         if (value == null) {
             logger.info("Value being inserted into the queue is null");
             return false;
         }
 
-        /*
-         * Compute where we need to insert this new value. if we're at the end
-         * of the queue, we start from the beginning, else increment end by 1.
-         */
-        if (end == (maxSize - 1)) {
-            end = 0;
-        } else {
-            end++;
-        }
-
-        /* Check to see if the queue is full or not */
-        if (!isFull()) {
-            queue[end] = value;
-
-        } else {
-            delete();
-            queue[end] = value;
-        }
-
-        dataEnd++;
-        count++;
-
-        return true;
-    }
-
-    /**
-     * Deletes a value from the start of the queue.
-     *
-     * @return true if value was deleted, false otherwise
-     */
-    public boolean delete() {
-        if (isEmpty()) {
-            logger.info("Queue is empty cannot delete - returning");
-            return false;
-        }
-        /* delete value */
-        queue[start] = null;
-
-        /* Make sure start now points to where the beginning of the data */
-        if (start == (maxSize - 1)) {
-            start = 0;
-        } else {
-            start++;
-        }
-
-        dataStart++;
-        count--;
+        queue[insert()] = value;
 
         return true;
     }
 
     /**
      * Returns the value at the specified index. If the index does not lie in
-     * the range {@link #inRange(int)} of the actual data in the queue, it'll
+     * the range {@link #inRange(long)} of the actual data in the queue, it'll
      * throw an {@link IndexOutOfBoundsException}
      *
      * @param index
      * @return
      * @throws IndexOutOfBoundsException
      */
-    public String get(int index) throws IndexOutOfBoundsException {
-
-        if (inRange(index)) {
-            // make sure that it's the relative index
-            int no = getRelativeIndex(index);
-            return queue[no];
-
-        } else {
-            throw new IndexOutOfBoundsException("Index being accessed is "
-                    + index);
-        }
+    @SuppressWarnings("unchecked")
+    public T get(long index) throws IndexOutOfBoundsException {
+        return (T) queue[slot(index)];
     }
 
     /**
-     * Just to make sure that the index value stays within the 0-(size-1)
-     * boundary. It will return a relative index, i.e. relative to the current
-     * {@link #start} and {@link #end}
-     * Example if index that is needed is 244 and it's well within the actual data range
-     * this function will find out where within the queue it lies.
+     * Insert every value of <code>values</code> into the queue, in iteration order, as if by
+     * {@link #add(Object)}. Null values are skipped.
      *
-     * @param indexToRead
-     * @return
-     */
-    protected int getRelativeIndex(int indexToRead) {
-        if (indexToRead >= maxSize) {
-            indexToRead = indexToRead % maxSize;
+     * @param values
+     *            the values to insert
+     * @return true if any value was inserted
+     */
+    public boolean addAll(Collection<? extends T> values) {
+        boolean added = false;
+        for (T value : values) {
+            if (value != null) {
+                queue[insert()] = value;
+                added = true;
+            }
         }
-        return indexToRead;
+        return added;
     }
 
     /**
-     * Getter method for {@link #dataStart}
-     * @return int
+     * Copy the values from absolute index <code>fromIndex</code>, inclusive, to
+     * <code>toIndex</code>, exclusive, into the start of <code>dest</code>. The range is checked
+     * once and copied with at most two array copies, so this is much cheaper than calling
+     * {@link #get(long)} for every index. To copy everything in the queue, use
+     * <code>copyRange(getDataStartIndex(), getDataEndIndex() + 1, dest)</code>.
+     *
+     * @param fromIndex
+     *            the absolute index of the first value to copy
+     * @param toIndex
+     *            the absolute index after the last value to copy
+     * @param dest
+     *            the array to copy into
+     * @return the number of values copied
+     * @throws IndexOutOfBoundsException
+     *             if the range is not in the queue or does not fit in <code>dest</code>
      */
-    public int getDataStartIndex() {
-        return this.dataStart;
-    }
+    public int copyRange(long fromIndex, long toIndex, T[] dest) throws IndexOutOfBoundsException {
+        if (toIndex == fromIndex) {
+            return 0;
+        }
+        checkRange(fromIndex, toIndex - 1);
+        if (toIndex - fromIndex > dest.length) {
+            throw new IndexOutOfBoundsException("Range of " + (toIndex - fromIndex)
+                    + " values does not fit in an array of " + dest.length);
+        }
 
-    /**
-     * Getter method for {@link #dataEnd}
-     * @return
-     */
-    public int getDataEndIndex() {
-        return this.dataEnd;
+        int n = (int) (toIndex - fromIndex);
+        int slot = storageIndex(fromIndex);
+        int first = Math.min(n, queue.length - slot);
+        System.arraycopy(queue, slot, dest, 0, first);
+        System.arraycopy(queue, 0, dest, first, n - first);
+        return n;
     }
 
     /**
-     * Getter method for {@link #start}
-     * @return
+     * Returns an iterator over the values in the queue, oldest first. The iterator does not
+     * support {@link Iterator#remove()}, and throws a {@link ConcurrentModificationException} if
+     * the queue is changed after it was created.
+     *
+     * @see java.lang.Iterable#iterator()
      */
-    public int getQueueStartIndex() {
-        return this.start;
-    }
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
 
-    /**
-     * Getter method for {@link #end}
-     * @return
-     */
-    public int getQueueEndIndex() {
-        return this.end;
-    }
+            private final int expectedModCount = modCount;
+            private final long end = getDataEndIndex();
+            private long index = getDataStartIndex();
+            private int slot = storageIndex(index);
 
-    /**
-     * Checks to see if the given index is between
-     * {@link #dataStart} and {@link #dataEnd}
-     * @param index
-     * @return
-     */
-    protected boolean isIndexInDataRange(int index) {
-        return (index >= dataStart && index <= dataEnd);
-    }
+            public boolean hasNext() {
+                return index <= end;
+            }
 
-    /**
-     * Returns the current size of how much data is in this queue. {
-     * {@link #count}
-     *
-     * @return
-     */
-    protected int getSize() {
-        return this.count;
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (index > end) {
+                    throw new NoSuchElementException();
+                }
+
+                T value = (T) queue[slot];
+                index++;
+                if (++slot == queue.length) {
+                    slot = 0;
+                }
+                return value;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 }
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A circular queue of strings that packs them as UTF-8 records into one shared byte arena, with an
+ * <code>int[]</code> table of offsets and lengths, instead of keeping a {@link String} per value.
+ * Every string costs an object header, a field block and an array of its own, which for short
+ * lines is more than the text itself. Here the values share the arena, which grows as needed up
+ * to {@link #getCapacity()} bytes, and a table of {@value #TABLE_ENTRY_SIZE} bytes per entry of
+ * the {@link #getStorageSize()} storage, and {@link #get(long)} decodes a value only when it is
+ * asked for.
+ * <p>
+ * Values are addressed by absolute index like in {@link CircularQueue}. The queue holds at most
+ * {@link #getMaxSize()} values and at most {@link #getCapacity()} bytes of them; whichever fills
+ * first decides when the oldest values are deleted to make room. {@link #getBytesPerLine()} shows
+ * what each value held actually costs, counting the whole arena and table, while
+ * {@link #getUsedBytes()} counts only the encoded values themselves.
+ * <p>
+ * This class is not thread safe.
+ */
+public class CompactCircularQueue extends AbstractCircularQueue {
+
+    /** The arena bytes per value used when no capacity is given */
+    public static final int DEFAULT_BYTES_PER_LINE = 128;
+
+    /** The bytes each value takes in the offset table */
+    public static final int TABLE_ENTRY_SIZE = 8;
+
+    /** The largest arena, which is about the largest array the JVM allocates */
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /** The size of the arena when the queue is created, before it grows toward its capacity */
+    public static final int INITIAL_ARENA_SIZE = 4096;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static Logger logger = Logger.getLogger(CompactCircularQueue.class);
+
+    /* The arena grows as needed until it reaches the capacity */
+    private final int capacity;
+    private byte[] arena;
+
+    /* The offset and length of each value's record, by storage index */
+    private int[] offsets;
+    private int[] lengths;
+
+    /* The bytes of the records of the values in the queue */
+    private long usedBytes;
+
+    /*
+     * The arena bytes from the oldest record to the end of the newest, including any bytes skipped
+     * at the end of the arena where a record wrapped, so that empty records are told apart from a
+     * full arena
+     */
+    private int occupied;
+
+    /**
+     * Create a compact circular queue holding <code>size</code> values in an arena of up to
+     * <code>size * </code>{@link #DEFAULT_BYTES_PER_LINE} bytes, or {@link #MAX_CAPACITY} if that
+     * is smaller.
+     *
+     * @param size
+     *            the most values the queue holds
+     */
+    public CompactCircularQueue(int size) {
+        this(size, (int) Math.min((long) size * DEFAULT_BYTES_PER_LINE, MAX_CAPACITY));
+    }
+
+    /**
+     * Create a compact circular queue. The arena starts at {@link #INITIAL_ARENA_SIZE} bytes and
+     * grows as values are added, so memory is only taken for the values actually held.
+     *
+     * @param size
+     *            the most values the queue holds
+     * @param capacity
+     *            the most bytes of UTF-8 encoded values the queue holds
+     * @throws IllegalArgumentException
+     *             if the capacity is not positive or larger than {@link #MAX_CAPACITY}
+     */
+    public CompactCircularQueue(int size, int capacity) {
+        super(size);
+        if ((capacity <= 0) || (capacity > MAX_CAPACITY)) {
+            throw new IllegalArgumentException("Invalid arena capacity: " + capacity
+                    + " bytes, must be from 1 to " + MAX_CAPACITY);
+        }
+        this.capacity = capacity;
+        this.arena = new byte[Math.min(capacity, INITIAL_ARENA_SIZE)];
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.AbstractCircularQueue#allocate(int)
+     */
+    @Override
+    protected void allocate(int size) {
+        offsets = new int[size];
+        lengths = new int[size];
+        usedBytes = 0;
+        occupied = 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.AbstractCircularQueue#release(int)
+     */
+    @Override
+    protected void release(int slot) {
+        usedBytes -= lengths[slot];
+
+        /* Free the record, and the bytes skipped after it if the next record wrapped */
+        if (getSize() == 1) {
+            occupied = 0;
+        } else {
+            int end = offsets[slot] + lengths[slot];
+            int next = offsets[storageIndex(getDataStartIndex() + 1)];
+            occupied -= lengths[slot] + ((next < end) ? arena.length - end : 0);
+        }
+    }
+
+    /**
+     * Insert a value at the end of the queue, deleting as many of the oldest values as needed to
+     * make room for its record.
+     * <p>
+     * Null values are not inserted into the queue.
+     *
+     * @param value
+     *            to be inserted
+     * @return true if value was inserted, false otherwise
+     * @throws IllegalArgumentException
+     *             if the encoded value is larger than the capacity
+     */
+    public boolean add(String value) {
+        if (value == null) {
+            logger.info("Value being inserted into the queue is null");
+            return false;
+        }
+
+        byte[] bytes = value.getBytes(UTF8);
+        if (bytes.length > capacity) {
+            throw new IllegalArgumentException("Value of " + bytes.length
+                    + " bytes is larger than the arena's " + capacity + " bytes");
+        }
+
+        /* Records are kept whole, so one that does not fit before the end of the arena wraps */
+        int tail = tail();
+        int offset = (tail + bytes.length > arena.length) ? 0 : tail;
+        int needed = ((offset < tail) ? arena.length - tail : 0) + bytes.length;
+
+        /* Rather than delete values to make room, grow the arena while it can */
+        if ((arena.length < capacity)
+                && ((bytes.length > arena.length) || (occupied + needed > arena.length))) {
+            grow(bytes.length);
+            tail = tail();
+            offset = (tail + bytes.length > arena.length) ? 0 : tail;
+            needed = ((offset < tail) ? arena.length - tail : 0) + bytes.length;
+        }
+
+        /* Delete the oldest values until the unoccupied bytes take the new record */
+        while (!isEmpty() && (isFull() || (occupied + needed > arena.length))) {
+            delete();
+        }
+        if (isEmpty()) {
+            offset = 0;
+            needed = bytes.length;
+        }
+
+        int slot = insert();
+        System.arraycopy(bytes, 0, arena, offset, bytes.length);
+        offsets[slot] = offset;
+        lengths[slot] = bytes.length;
+        usedBytes += bytes.length;
+        occupied += needed;
+
+        return true;
+    }
+
+    /**
+     * Returns the value at the specified index, decoded from its record. If the index does not lie
+     * in the range {@link #inRange(long)} of the actual data in the queue, it'll throw an
+     * {@link IndexOutOfBoundsException}
+     *
+     * @param index
+     *            the absolute index of the value
+     * @return the value
+     * @throws IndexOutOfBoundsException
+     *             if the value at that index is not in the queue
+     */
+    public String get(long index) throws IndexOutOfBoundsException {
+        int slot = slot(index);
+        return new String(arena, offsets[slot], lengths[slot], UTF8);
+    }
+
+    /**
+     * Get the most bytes of values the queue holds, which the arena grows to as needed.
+     *
+     * @return the number of bytes of UTF-8 encoded values the queue holds
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of bytes allocated for the arena so far.
+     *
+     * @return the current size of the arena
+     */
+    public int getArenaSize() {
+        return arena.length;
+    }
+
+    /**
+     * Get the number of arena bytes taken by the records of the values in the queue.
+     *
+     * @return the encoded size of the values
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Get the average number of bytes each value in the queue costs: the arena allocated so far
+     * plus the whole offset table, divided by the number of values held. Unused arena and table
+     * entries count against the values, so this is high until the queue fills up.
+     *
+     * @return the bytes per value, or 0 if the queue is empty
+     */
+    public double getBytesPerLine() {
+        int count = getSize();
+        long allocated = arena.length + (long) getStorageSize() * TABLE_ENTRY_SIZE;
+        return (count == 0) ? 0 : (double) allocated / count;
+    }
+
+    /**
+     * Get the arena offset just after the record of the newest value, or 0 if the queue is empty.
+     */
+    private int tail() {
+        if (isEmpty()) {
+            return 0;
+        }
+        int last = storageIndex(getDataEndIndex());
+        return offsets[last] + lengths[last];
+    }
+
+    /**
+     * Move the records into a larger arena, oldest first from its start, with room for at least
+     * <code>length</code> more bytes if the capacity allows.
+     */
+    private void grow(int length) {
+        long wanted = Math.max(2L * arena.length, usedBytes + length);
+        byte[] grown = new byte[(int) Math.min(wanted, capacity)];
+
+        int position = 0;
+        for (long i = getDataStartIndex(); i <= getDataEndIndex(); i++) {
+            int slot = storageIndex(i);
+            System.arraycopy(arena, offsets[slot], grown, position, lengths[slot]);
+            offsets[slot] = position;
+            position += lengths[slot];
+        }
+        arena = grown;
+        occupied = position;
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A version of {@link CircularQueue} that one appending thread and any number of reading threads
+ * can share without a lock, such as the recent lines of a log collected by one thread and served
+ * by many request handlers. Values are addressed the same way, by the absolute index they were
+ * added at, and once the queue is full every value added overwrites the oldest one.
+ * <p>
+ * Only one thread may call {@link #add(Object)} and {@link #addAll(Collection)}. Readers never
+ * block the appender or each other. Instead they validate what they read in the manner of a
+ * seqlock: the appender moves {@link #getDataStartIndex()} past a value before it overwrites it,
+ * so a reader that still finds its index at or after the data start once it has read the value
+ * knows the value was not overwritten underneath it. If it was, the read fails with an
+ * {@link IndexOutOfBoundsException}, just as if the index had already been overwritten when the
+ * read began.
+ *
+ * @param <T>
+ *            the type of the values
+ */
+public class ConcurrentCircularQueue<T> {
+
+    private final int maxSize;
+    private final int mask;
+    private final AtomicReferenceArray<T> queue;
+
+    /*
+     * The absolute indexes of the oldest and newest values. Only the appender writes them; the
+     * start is advanced before a value is overwritten and the end after a value is stored.
+     */
+    private volatile long dataStart;
+    private volatile long dataEnd = -1;
+
+    /**
+     * Create a concurrent circular queue with desired size
+     *
+     * @param size
+     *            the most values the queue holds
+     * @throws IllegalArgumentException
+     *             if the size is not positive or larger than
+     *             {@link AbstractCircularQueue#MAX_SIZE}
+     */
+    public ConcurrentCircularQueue(int size) {
+        if ((size <= 0) || (size > AbstractCircularQueue.MAX_SIZE)) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        this.maxSize = size;
+        this.mask = capacity - 1;
+        this.queue = new AtomicReferenceArray<T>(capacity);
+    }
+
+    /**
+     * Creates a concurrent circular queue with default size as
+     * {@link AbstractCircularQueue#DEFAULT_MAX_SIZE}
+     */
+    public ConcurrentCircularQueue() {
+        this(AbstractCircularQueue.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Insert a value at the end of the queue, overwriting the oldest value if the queue is full.
+     * Null values are not inserted. Must only be called by the appending thread.
+     *
+     * @param value
+     *            to be inserted
+     * @return true if value was inserted, false otherwise
+     */
+    public boolean add(T value) {
+        if (value == null) {
+            return false;
+        }
+
+        long index = dataEnd + 1;
+        if (index - dataStart == maxSize) {
+            /*
+             * Publish that the oldest value is gone before overwriting it. The overwrite is a
+             * volatile write so no reader can see it before the new start.
+             */
+            dataStart = index - maxSize + 1;
+            queue.set((int) index & mask, value);
+        } else {
+            /* No reader can be reading an unused slot, so an ordered store suffices */
+            queue.lazySet((int) index & mask, value);
+        }
+
+        dataEnd = index;
+        return true;
+    }
+
+    /**
+     * Insert every value of <code>values</code> into the queue, in iteration order, as if by
+     * {@link #add(Object)}. Null values are skipped. Must only be called by the appending thread.
+     *
+     * @param values
+     *            the values to insert
+     * @return true if any value was inserted
+     */
+    public boolean addAll(Collection<? extends T> values) {
+        boolean added = false;
+        for (T value : values) {
+            added |= add(value);
+        }
+        return added;
+    }
+
+    /**
+     * Returns the value at the specified absolute index, without blocking.
+     *
+     * @param index
+     *            the absolute index of the value
+     * @return the value
+     * @throws IndexOutOfBoundsException
+     *             if the value at that index is not in the queue, or was overwritten while it was
+     *             being read
+     */
+    public T get(long index) throws IndexOutOfBoundsException {
+        checkRange(index, index);
+        T value = queue.get((int) index & mask);
+        validate(index);
+        return value;
+    }
+
+    /**
+     * Copy the values from absolute index <code>fromIndex</code>, inclusive, to
+     * <code>toIndex</code>, exclusive, into the start of <code>dest</code>, without blocking. The
+     * copy is validated once at the end, so it is either a consistent snapshot of the range or
+     * fails.
+     *
+     * @param fromIndex
+     *            the absolute index of the first value to copy
+     * @param toIndex
+     *            the absolute index after the last value to copy
+     * @param dest
+     *            the array to copy into
+     * @return the number of values copied
+     * @throws IndexOutOfBoundsException
+     *             if the range is not in the queue or does not fit in <code>dest</code>, or its
+     *             oldest values were overwritten while it was being copied
+     */
+    public int copyRange(long fromIndex, long toIndex, T[] dest) throws IndexOutOfBoundsException {
+        if (toIndex == fromIndex) {
+            return 0;
+        }
+        checkRange(fromIndex, toIndex - 1);
+        if (toIndex - fromIndex > dest.length) {
+            throw new IndexOutOfBoundsException("Range of " + (toIndex - fromIndex)
+                    + " values does not fit in an array of " + dest.length);
+        }
+
+        int n = (int) (toIndex - fromIndex);
+        for (int i = 0; i < n; i++) {
+            dest[i] = queue.get((int) (fromIndex + i) & mask);
+        }
+        validate(fromIndex);
+        return n;
+    }
+
+    /**
+     * Get the absolute index of the oldest value in the queue.
+     *
+     * @return the data start index
+     */
+    public long getDataStartIndex() {
+        return dataStart;
+    }
+
+    /**
+     * Get the absolute index of the newest value in the queue, or <code>-1</code> if nothing has
+     * been added yet.
+     *
+     * @return the data end index
+     */
+    public long getDataEndIndex() {
+        return dataEnd;
+    }
+
+    /**
+     * Get the most values the queue holds.
+     *
+     * @return the size given at construction
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Check to see if the queue is empty.
+     *
+     * @return true if nothing has been added yet
+     */
+    public boolean isEmpty() {
+        return dataEnd < 0;
+    }
+
+    /**
+     * Checks to see if the queue is full.
+     *
+     * @return true if the queue holds {@link #getMaxSize()} values
+     */
+    public boolean isFull() {
+        long end = dataEnd;
+        return end - dataStart + 1 == maxSize;
+    }
+
+    /**
+     * Checks that the values from <code>from</code> to <code>to</code>, inclusive, are in the
+     * queue. The end is read before the start, so a value that is in range has been published.
+     */
+    private void checkRange(long from, long to) throws IndexOutOfBoundsException {
+        long end = dataEnd;
+        if ((from > to) || (to > end) || (from < dataStart)) {
+            throw new IndexOutOfBoundsException("Range being accessed is " + from + " to " + to);
+        }
+    }
+
+    /**
+     * Checks that the value at <code>index</code> was not overwritten while it was being read.
+     */
+    private void validate(long index) throws IndexOutOfBoundsException {
+        if (index < dataStart) {
+            throw new IndexOutOfBoundsException("Index " + index
+                    + " was overwritten while reading");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteStore} backed by native memory from {@link ByteBuffer#allocateDirect(int)}. Large
+ * buffers kept here do not count against the heap, so they neither grow the old generation nor
+ * lengthen full collections. The memory is limited by <code>-XX:MaxDirectMemorySize</code> and is
+ * released once the store has been garbage collected.
+ */
+public class DirectByteStore extends ByteBufferStore {
+
+    /**
+     * Construct a new DirectByteStore of the given size.
+     *
+     * @param capacity
+     *            the number of bytes to allocate
+     */
+    public DirectByteStore(int capacity) {
+        super(ByteBuffer.allocateDirect(capacity));
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#checkpoint(int, int)
+     */
+    public void checkpoint(int start, int used) {
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#close()
+     */
+    public void close() {
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how an elastic {@link CircularBuffer} grows and shrinks. The buffer starts at the
+ * minimum capacity. When a write would take the unread data past the high-water mark, the buffer
+ * doubles in size (up to the maximum capacity) instead of making the writer wait. Once the unread
+ * data has stayed below the high-water mark of the minimum capacity for the idle time, the buffer
+ * shrinks back to the minimum capacity.
+ * <p>
+ * Every resize copies the unread data into a new array, so the policy trades memory held during
+ * quiet periods against the cost of those copies during bursts. The buffer reports how often it
+ * resized and its peak occupancy to help tune the policy.
+ */
+public class ElasticPolicy {
+
+    private final int minCapacity;
+    private final int maxCapacity;
+    private final int highWaterPercent;
+    private final long idleNanos;
+
+    /**
+     * Construct a new policy.
+     *
+     * @param minCapacity
+     *            the size the buffer starts at and shrinks back to
+     * @param maxCapacity
+     *            the largest size the buffer grows to; writers wait once it is reached
+     * @param highWaterPercent
+     *            how full, in percent of the current capacity, the buffer may get before it grows
+     * @param idleTime
+     *            how long the buffer must stay quiet before it shrinks
+     * @param unit
+     *            the unit of <code>idleTime</code>
+     * @throws IllegalArgumentException
+     *             if the capacities or the high-water mark are out of range
+     */
+    public ElasticPolicy(int minCapacity, int maxCapacity, int highWaterPercent, long idleTime,
+            TimeUnit unit) {
+        if ((minCapacity <= 0) || (maxCapacity < minCapacity)) {
+            throw new IllegalArgumentException("Invalid capacities: min=" + minCapacity + ", max="
+                    + maxCapacity);
+        }
+        if ((highWaterPercent <= 0) || (highWaterPercent > 100)) {
+            throw new IllegalArgumentException("Invalid high-water mark: " + highWaterPercent + "%");
+        }
+        this.minCapacity = minCapacity;
+        this.maxCapacity = maxCapacity;
+        this.highWaterPercent = highWaterPercent;
+        this.idleNanos = unit.toNanos(idleTime);
+    }
+
+    /**
+     * Get the size the buffer starts at and shrinks back to.
+     *
+     * @return the minimum capacity
+     */
+    public int getMinCapacity() {
+        return minCapacity;
+    }
+
+    /**
+     * Get the largest size the buffer grows to.
+     *
+     * @return the maximum capacity
+     */
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Get how full, in percent of the current capacity, the buffer may get before it grows.
+     *
+     * @return the high-water mark in percent
+     */
+    public int getHighWaterPercent() {
+        return highWaterPercent;
+    }
+
+    /**
+     * Get how long the buffer must stay quiet before it shrinks.
+     *
+     * @param unit
+     *            the unit to return the time in
+     * @return the idle time
+     */
+    public long getIdleTime(TimeUnit unit) {
+        return unit.convert(idleNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Checks if <code>used</code> bytes are above the high-water mark of a buffer of the given
+     * capacity.
+     */
+    boolean isAboveHighWater(long used, int capacity) {
+        return used * 100 > (long) capacity * highWaterPercent;
+    }
+
+    /**
+     * Get the capacity to grow to so that <code>needed</code> bytes stay below the high-water
+     * mark, doubling <code>capacity</code> as often as needed without passing the maximum.
+     */
+    int grownCapacity(int capacity, long needed) {
+        long grown = capacity;
+        while ((grown < maxCapacity) && isAboveHighWater(needed, (int) grown)) {
+            grown = Math.min(maxCapacity, grown * 2);
+        }
+        return (int) grown;
+    }
+}
@@ -0,0 +1,422 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A ring of discrete records on top of a {@link CircularBuffer}. Each record is stored with a
+ * {@value #HEADER_SIZE} byte length header, and is always written and read as a whole: a reader
+ * never sees part of a record and records from different writers never interleave.
+ * <p>
+ * {@link #offer(byte[])} and {@link #poll()} work like their {@link java.util.Queue}
+ * counterparts, failing straight away when there is no room or no record, and have timed variants
+ * that wait. To consume many records at once, {@link #drainTo(RecordHandler, int)} hands a batch of
+ * records to a {@link RecordHandler}, copying the whole batch out of the ring into a reused array
+ * with one bulk read.
+ * <p>
+ * Every operation takes the lock of the underlying buffer exactly once and moves the header and
+ * the record together, so a record costs one lock acquisition, one wake-up and one store
+ * checkpoint rather than one for the header and another for the body.
+ */
+public class FramedCircularBuffer implements Closeable {
+
+    /** Size of the length header stored in front of every record */
+    public static final int HEADER_SIZE = 4;
+
+    private final CircularBuffer buffer;
+
+    /**
+     * The lock of the underlying buffer, which guards the fields below. Writers wait on
+     * <code>notFull</code> for room and readers wait on <code>notEmpty</code> for records.
+     */
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private final Condition notEmpty;
+
+    private final byte[] header = new byte[HEADER_SIZE];
+    private byte[] scratch = new byte[64];
+    private int records;
+
+    /**
+     * Construct a new FramedCircularBuffer of the given size.
+     *
+     * @param size
+     *            the number of bytes the buffer can hold, headers included
+     */
+    public FramedCircularBuffer(int size) {
+        this(new HeapByteStore(size));
+    }
+
+    /**
+     * Construct a new FramedCircularBuffer that keeps its data in the given store. The store is
+     * closed when this buffer is closed.
+     *
+     * @param store
+     *            the store to keep the data in, which also determines the size of the buffer
+     */
+    public FramedCircularBuffer(ByteStore store) {
+        this.buffer = new CircularBuffer(store);
+        this.lock = buffer.getLock();
+        this.notFull = lock.newCondition();
+        this.notEmpty = lock.newCondition();
+    }
+
+    /**
+     * Add <code>b</code> as a record if there is room for it right now.
+     *
+     * @param b
+     *            the record
+     * @return <code>true</code> if the record was added, <code>false</code> if there is no room
+     * @throws IllegalArgumentException
+     *             if the record could never fit in this buffer
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public boolean offer(byte[] b) {
+        return offer(b, 0, b.length);
+    }
+
+    /**
+     * Add <code>len</code> bytes of <code>b</code> starting at <code>off</code> as a record if there
+     * is room for it right now.
+     *
+     * @param b
+     *            the array holding the record
+     * @param off
+     *            the offset of the record
+     * @param len
+     *            the length of the record
+     * @return <code>true</code> if the record was added, <code>false</code> if there is no room
+     * @throws IllegalArgumentException
+     *             if the record could never fit in this buffer
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public boolean offer(byte[] b, int off, int len) {
+        CircularBuffer.checkBounds(b, off, len);
+        checkSize(len);
+
+        lock.lock();
+        try {
+            if (!hasRoom(len)) {
+                return false;
+            }
+            writeHeader(len);
+            buffer.append(b, off, len);
+            added(len);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add the remaining contents of <code>src</code> as a record if there is room for it right now.
+     *
+     * @param src
+     *            the record; if it is added, the position is advanced to the limit
+     * @return <code>true</code> if the record was added, <code>false</code> if there is no room
+     * @throws IllegalArgumentException
+     *             if the record could never fit in this buffer
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public boolean offer(ByteBuffer src) {
+        int len = src.remaining();
+        checkSize(len);
+
+        lock.lock();
+        try {
+            if (!hasRoom(len)) {
+                return false;
+            }
+            writeHeader(len);
+            buffer.append(src);
+            added(len);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add <code>b</code> as a record, waiting for at most the given time for room.
+     *
+     * @param b
+     *            the record
+     * @param timeout
+     *            the longest time to wait
+     * @param unit
+     *            the unit of <code>timeout</code>
+     * @return <code>true</code> if the record was added, <code>false</code> if the timeout elapsed
+     * @throws InterruptedIOException
+     *             if the thread is interrupted while waiting
+     * @throws IllegalArgumentException
+     *             if the record could never fit in this buffer
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public boolean offer(byte[] b, long timeout, TimeUnit unit) throws InterruptedIOException {
+        checkSize(b.length);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        lock.lock();
+        try {
+            while (buffer.isOpen() && !hasRoom(b.length)) {
+                if (!await(notFull, deadline)) {
+                    return false;
+                }
+            }
+            return offer(b);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the oldest record, if there is one.
+     *
+     * @return the record, or <code>null</code> if the buffer is empty or has been closed
+     */
+    public byte[] poll() {
+        lock.lock();
+        try {
+            if ((records == 0) || !buffer.isOpen()) {
+                return null;
+            }
+
+            byte[] record = new byte[readHeader(0)];
+            buffer.peek(HEADER_SIZE, record, 0, record.length);
+            buffer.skip(HEADER_SIZE + record.length);
+            removed(1);
+            return record;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the oldest record, waiting for at most the given time for one to arrive.
+     *
+     * @param timeout
+     *            the longest time to wait
+     * @param unit
+     *            the unit of <code>timeout</code>
+     * @return the record, or <code>null</code> if the timeout elapsed or the buffer has been closed
+     * @throws InterruptedIOException
+     *             if the thread is interrupted while waiting
+     */
+    public byte[] poll(long timeout, TimeUnit unit) throws InterruptedIOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        lock.lock();
+        try {
+            while (buffer.isOpen() && (records == 0)) {
+                if (!await(notEmpty, deadline)) {
+                    return null;
+                }
+            }
+            return poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove up to <code>maxRecords</code> of the oldest records and hand them, oldest first, to
+     * <code>handler</code>. The whole batch is copied out of the ring with one bulk read and
+     * drained under one acquisition of the lock, so the handler should be quick; writers wait
+     * until it is done. If the handler throws, the records it has already been given are removed
+     * and the rest stay in the buffer.
+     *
+     * @param handler
+     *            receives each record
+     * @param maxRecords
+     *            the most records to drain
+     * @return the number of records drained, possibly zero
+     */
+    public int drainTo(RecordHandler handler, int maxRecords) {
+        lock.lock();
+        try {
+            int batch = Math.min(maxRecords, records);
+            if (!buffer.isOpen() || (batch <= 0)) {
+                return 0;
+            }
+
+            int bytes = (batch == records) ? buffer.getUsed() : batchSize(batch);
+            if (scratch.length < bytes) {
+                scratch = new byte[Math.max(bytes, scratch.length * 2)];
+            }
+            buffer.peek(0, scratch, 0, bytes);
+
+            int n = 0;
+            int pos = 0;
+            try {
+                while (n < batch) {
+                    int len = decode(scratch, pos);
+                    pos += HEADER_SIZE + len;
+                    n++;
+                    handler.onRecord(scratch, pos - len, len);
+                }
+            } finally {
+                buffer.skip(pos);
+                removed(n);
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of records waiting to be read.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the largest record this buffer can hold.
+     *
+     * @return the maximum record length
+     */
+    public int getMaxRecordSize() {
+        return buffer.getCapacity() - HEADER_SIZE;
+    }
+
+    /**
+     * Returns <code>true</code> until this buffer is closed.
+     *
+     * @return <code>true</code> if the buffer is open
+     */
+    public boolean isOpen() {
+        return buffer.isOpen();
+    }
+
+    /**
+     * Closes the buffer. Records that have not been read are discarded and threads waiting in the
+     * timed {@link #offer(byte[], long, TimeUnit)} and {@link #poll(long, TimeUnit)} return.
+     *
+     * @see java.io.Closeable#close()
+     */
+    public void close() {
+        lock.lock();
+        try {
+            buffer.close();
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkSize(int len) {
+        if (len > getMaxRecordSize()) {
+            throw new IllegalArgumentException("Record of " + len
+                    + " bytes is larger than the maximum of " + getMaxRecordSize());
+        }
+    }
+
+    /**
+     * Checks if a record of the given length fits right now. Must be called while holding the
+     * lock.
+     *
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    private boolean hasRoom(int len) {
+        if (!buffer.isOpen()) {
+            throw new IllegalStateException("Cannot write to a closed stream");
+        }
+        return buffer.getFree() >= HEADER_SIZE + len;
+    }
+
+    /**
+     * Wait on <code>condition</code> until signalled or the deadline passes. Must be called while
+     * holding the lock.
+     *
+     * @return <code>false</code> if the deadline has passed
+     */
+    private boolean await(Condition condition, long deadline) throws InterruptedIOException {
+        long nanos = deadline - System.nanoTime();
+        if (nanos <= 0) {
+            return false;
+        }
+        try {
+            condition.awaitNanos(nanos);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of bytes the oldest <code>n</code> records take up, headers included, by
+     * walking their headers. Must be called while holding the lock.
+     */
+    private int batchSize(int n) {
+        int bytes = 0;
+        for (int i = 0; i < n; i++) {
+            bytes += HEADER_SIZE + readHeader(bytes);
+        }
+        return bytes;
+    }
+
+    private void writeHeader(int len) {
+        header[0] = (byte) (len >>> 24);
+        header[1] = (byte) (len >>> 16);
+        header[2] = (byte) (len >>> 8);
+        header[3] = (byte) len;
+        buffer.append(header, 0, HEADER_SIZE);
+    }
+
+    private int readHeader(int skip) {
+        buffer.peek(skip, header, 0, HEADER_SIZE);
+        return decode(header, 0);
+    }
+
+    private static int decode(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16)
+                | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    private void added(int len) {
+        buffer.appended(HEADER_SIZE + len);
+        records++;
+        notEmpty.signal();
+    }
+
+    private void removed(int n) {
+        records -= n;
+        if (n > 0) {
+            notFull.signalAll();
+        }
+    }
+}
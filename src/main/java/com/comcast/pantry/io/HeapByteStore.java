@@ -0,0 +1,100 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteStore} backed by an ordinary byte array on the heap. This is the default store for a
+ * {@link CircularBuffer}.
+ */
+public class HeapByteStore implements ByteStore {
+
+    private final byte[] bytes;
+
+    /**
+     * Construct a new HeapByteStore of the given size.
+     *
+     * @param capacity
+     *            the number of bytes to allocate
+     */
+    public HeapByteStore(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#capacity()
+     */
+    public int capacity() {
+        return bytes.length;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#get(int, byte[], int, int)
+     */
+    public void get(int index, byte[] dst, int off, int len) {
+        System.arraycopy(bytes, index, dst, off, len);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#put(int, byte[], int, int)
+     */
+    public void put(int index, byte[] src, int off, int len) {
+        System.arraycopy(src, off, bytes, index, len);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#get(int, java.nio.ByteBuffer, int)
+     */
+    public void get(int index, ByteBuffer dst, int len) {
+        dst.put(bytes, index, len);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#put(int, java.nio.ByteBuffer, int)
+     */
+    public void put(int index, ByteBuffer src, int len) {
+        src.get(bytes, index, len);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#view(int, int)
+     */
+    public ByteBuffer view(int index, int len) {
+        return ByteBuffer.wrap(bytes, index, len).slice();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#checkpoint(int, int)
+     */
+    public void checkpoint(int start, int used) {
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#close()
+     */
+    public void close() {
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.Arrays;
+
+/**
+ * A circular queue of <code>int</code>s, such as a rolling window of latencies, kept without
+ * boxing. It is addressed like {@link CircularQueue}: every value keeps the absolute index it was
+ * added at, from {@link #getDataStartIndex()} to {@link #getDataEndIndex()}, for as long as it is
+ * in the queue, and once the queue is full every value added overwrites the oldest one.
+ * <p>
+ * The aggregate queries work over any range of absolute indexes still in the queue, both ends
+ * included, so a rolling window can be summarized without copying it out first.
+ */
+public class IntCircularQueue extends AbstractCircularQueue {
+
+    private int[] queue;
+
+    /**
+     * Create a circular queue with desired size
+     *
+     * @param size
+     *            the most values the queue holds
+     */
+    public IntCircularQueue(int size) {
+        super(size);
+    }
+
+    /**
+     * Creates a circular queue with default size as {@link #DEFAULT_MAX_SIZE}
+     */
+    public IntCircularQueue() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.AbstractCircularQueue#allocate(int)
+     */
+    @Override
+    protected void allocate(int size) {
+        queue = new int[size];
+    }
+
+    /**
+     * Insert a value at the end of the queue, overwriting the oldest value if the queue is full.
+     *
+     * @param value
+     *            to be inserted
+     */
+    public void add(int value) {
+        queue[insert()] = value;
+    }
+
+    /**
+     * Returns the value at the specified absolute index.
+     *
+     * @param index
+     *            the absolute index of the value
+     * @return the value
+     * @throws IndexOutOfBoundsException
+     *             if the value at that index is not in the queue
+     */
+    public int get(long index) throws IndexOutOfBoundsException {
+        return queue[slot(index)];
+    }
+
+    /**
+     * Get the sum of the values from <code>from</code> to <code>to</code>.
+     *
+     * @param from
+     *            the absolute index of the first value
+     * @param to
+     *            the absolute index of the last value, inclusive
+     * @return the sum, which is a <code>long</code> so it cannot overflow
+     * @throws IndexOutOfBoundsException
+     *             if the range is not in the queue
+     */
+    public long sum(long from, long to) throws IndexOutOfBoundsException {
+        checkRange(from, to);
+        long sum = 0;
+        int slot = storageIndex(from);
+
+        for (int n = (int) (to - from) + 1; n > 0; n--) {
+            sum += queue[slot];
+            if (++slot == queue.length) {
+                slot = 0;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Get the smallest of the values from <code>from</code> to <code>to</code>.
+     *
+     * @param from
+     *            the absolute index of the first value
+     * @param to
+     *            the absolute index of the last value, inclusive
+     * @return the minimum
+     * @throws IndexOutOfBoundsException
+     *             if the range is not in the queue
+     */
+    public int min(long from, long to) throws IndexOutOfBoundsException {
+        checkRange(from, to);
+        int slot = storageIndex(from);
+        int min = queue[slot];
+
+        for (int n = (int) (to - from); n > 0; n--) {
+            if (++slot == queue.length) {
+                slot = 0;
+            }
+            min = Math.min(min, queue[slot]);
+        }
+        return min;
+    }
+
+    /**
+     * Get the largest of the values from <code>from</code> to <code>to</code>.
+     *
+     * @param from
+     *            the absolute index of the first value
+     * @param to
+     *            the absolute index of the last value, inclusive
+     * @return the maximum
+     * @throws IndexOutOfBoundsException
+     *             if the range is not in the queue
+     */
+    public int max(long from, long to) throws IndexOutOfBoundsException {
+        checkRange(from, to);
+        int slot = storageIndex(from);
+        int max = queue[slot];
+
+        for (int n = (int) (to - from); n > 0; n--) {
+            if (++slot == queue.length) {
+                slot = 0;
+            }
+            max = Math.max(max, queue[slot]);
+        }
+        return max;
+    }
+
+    /**
+     * Get a percentile of the values from <code>from</code> to <code>to</code>, by the
+     * nearest-rank method: the smallest value that is at least as large as <code>percentile</code>
+     * percent of the values. The 50th percentile is the median, the 0th the minimum and the 100th
+     * the maximum. The range is copied and sorted, so this takes time in proportion to its size.
+     *
+     * @param from
+     *            the absolute index of the first value
+     * @param to
+     *            the absolute index of the last value, inclusive
+     * @param percentile
+     *            the percentile, from 0 to 100
+     * @return the value at that percentile
+     * @throws IndexOutOfBoundsException
+     *             if the range is not in the queue
+     * @throws IllegalArgumentException
+     *             if the percentile is not between 0 and 100
+     */
+    public int percentile(long from, long to, double percentile)
+            throws IndexOutOfBoundsException {
+        checkRange(from, to);
+        int n = (int) (to - from + 1);
+        int rank = rank(percentile, n);
+
+        int[] sorted = new int[n];
+        int slot = storageIndex(from);
+        int first = Math.min(n, queue.length - slot);
+        System.arraycopy(queue, slot, sorted, 0, first);
+        System.arraycopy(queue, 0, sorted, first, n - first);
+        Arrays.sort(sorted);
+
+        return sorted[rank];
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link ByteStore} backed by a memory-mapped file. Like {@link DirectByteStore} the data lives
+ * outside of the heap, but because the pages belong to the file the buffered data survives the
+ * process crashing. Every time the owning {@link CircularBuffer} moves, it records its cursor in a
+ * small header at the front of the file, so opening the same file again after a crash finds the
+ * data that had been written but not yet read (see {@link #readUnconsumed()}). Do this before
+ * handing the store to a new {@link CircularBuffer}, since a new buffer always starts out empty.
+ * <p>
+ * The file is laid out as a {@value #HEADER_SIZE} byte header (a magic number, the capacity and the
+ * packed start/used cursor) followed by the data region.
+ */
+public class MappedByteStore extends ByteBufferStore {
+
+    /** Size of the header that precedes the data region in the file */
+    public static final int HEADER_SIZE = 16;
+
+    private static final int MAGIC = 0x50414e54; // PANT
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int CURSOR_OFFSET = 8;
+
+    private final File file;
+    private final MappedByteBuffer mapped;
+    private final boolean recovered;
+
+    /**
+     * Map a store of the given size onto <code>file</code>. If the file already holds a store of
+     * the same capacity, for example one left behind by a process that crashed, its contents and
+     * cursor are kept; otherwise the file is (re)initialized as an empty store.
+     *
+     * @param file
+     *            the file to map
+     * @param capacity
+     *            the number of bytes of data the store can hold
+     * @throws IOException
+     *             if the file could not be opened or mapped
+     */
+    public MappedByteStore(File file, int capacity) throws IOException {
+        this(file, capacity, map(file, capacity));
+    }
+
+    private MappedByteStore(File file, int capacity, MappedByteBuffer mapped) {
+        super(slice(mapped));
+        this.file = file;
+        this.mapped = mapped;
+
+        if ((mapped.getInt(MAGIC_OFFSET) == MAGIC)
+                && (mapped.getInt(CAPACITY_OFFSET) == capacity)) {
+            this.recovered = true;
+        } else {
+            mapped.putInt(MAGIC_OFFSET, MAGIC);
+            mapped.putInt(CAPACITY_OFFSET, capacity);
+            mapped.putLong(CURSOR_OFFSET, 0L);
+            this.recovered = false;
+        }
+    }
+
+    private static MappedByteBuffer map(File file, int capacity) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            /* The mapping stays valid after the channel is closed */
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) HEADER_SIZE + capacity);
+        } finally {
+            StreamHelper.close(raf);
+        }
+    }
+
+    private static ByteBuffer slice(MappedByteBuffer mapped) {
+        ByteBuffer dup = mapped.duplicate();
+        dup.position(HEADER_SIZE);
+        return dup.slice();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteStore#checkpoint(int, int)
+     */
+    public void checkpoint(int start, int used) {
+        /* A single aligned long write so the start and used can never be torn apart */
+        mapped.putLong(CURSOR_OFFSET, ((long) start << 32) | (used & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Get the index of the first unread byte as of the last checkpoint.
+     *
+     * @return the start index
+     */
+    public int getStart() {
+        return (int) (mapped.getLong(CURSOR_OFFSET) >>> 32);
+    }
+
+    /**
+     * Get the number of unread bytes as of the last checkpoint.
+     *
+     * @return the number of unread bytes
+     */
+    public int getUsed() {
+        return (int) mapped.getLong(CURSOR_OFFSET);
+    }
+
+    /**
+     * Returns <code>true</code> if this store was opened over a file that already held a store of
+     * the same capacity.
+     *
+     * @return <code>true</code> if existing data was found in the file
+     */
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Copy out the data that had been written but not yet read as of the last checkpoint. This is
+     * meant for inspecting what a crashed process still had buffered.
+     *
+     * @return the unread data, in the order it was written
+     */
+    public byte[] readUnconsumed() {
+        long cursor = mapped.getLong(CURSOR_OFFSET);
+        int start = (int) (cursor >>> 32);
+        int used = (int) cursor;
+
+        byte[] unconsumed = new byte[used];
+        int first = Math.min(used, capacity() - start);
+        get(start, unconsumed, 0, first);
+        get(0, unconsumed, first, used - first);
+        return unconsumed;
+    }
+
+    /**
+     * Get the file this store is mapped onto.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Flushes the data to the file. The mapping itself is released once this store has been
+     * garbage collected.
+     *
+     * @see com.comcast.pantry.io.ByteStore#close()
+     */
+    public void close() {
+        mapped.force();
+    }
+}
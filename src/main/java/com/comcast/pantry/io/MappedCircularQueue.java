@@ -0,0 +1,396 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A queue of strings addressed like a {@link CircularQueue}, but kept in a memory-mapped file
+ * instead of on the heap, so the last lines of a log survive the process dying. Opening the same
+ * file again, for example from the restarted process, finds the values where they were:
+ * {@link #get(long)} serves them by the same absolute indexes straight away, without reading
+ * through the file first.
+ * <p>
+ * Values are stored as UTF-8 records in a ring of {@link #getDataCapacity()} bytes. Once the queue
+ * holds {@link #getMaxSize()} values, or a new record needs the bytes of the oldest ones, the
+ * oldest values are deleted to make room, so the queue keeps as many of the newest values as fit.
+ * <p>
+ * The file is laid out as a {@value #HEADER_SIZE} byte header, an index holding the offset and
+ * length of every value's record, and the data region. The header holds a magic number, the
+ * version of the layout, the maximum number of values, the size of the data region, a sequence number and two slots for the
+ * <code>long</code> absolute indexes of the oldest and newest values and the number of bytes of the
+ * ring their records occupy. The slot is written while not in use and then made current by
+ * advancing the sequence number, whose lowest bit names the current slot, with a single aligned
+ * write. The header is updated last, so a crash never leaves an index pointing at a record that was
+ * not completely written, nor a slot torn apart. A file whose recovered indexes or records do not
+ * fit the sizes in its header is corrupt, and is reinitialized rather than trusted.
+ * <p>
+ * Like {@link CircularQueue}, this class is not thread safe.
+ */
+public class MappedCircularQueue {
+
+    /** Size of the header at the front of the file */
+    public static final int HEADER_SIZE = 72;
+
+    /** Size of each index entry, holding the offset and length of a record */
+    public static final int INDEX_ENTRY_SIZE = 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static Logger logger = Logger.getLogger(MappedCircularQueue.class);
+
+    private static final int MAGIC = 0x504a4e4c; // PJNL
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int MAX_SIZE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+
+    /*
+     * The sequence number, and the two slots it chooses between, each holding the start and end
+     * indexes and the occupied bytes
+     */
+    static final int SEQUENCE_OFFSET = 16;
+    static final int CURSORS_OFFSET = 24;
+    static final int CURSORS_SIZE = 24;
+
+    private final File file;
+    private final MappedByteBuffer mapped;
+    private final int maxSize;
+    private final int dataCapacity;
+    private final int dataOffset;
+    private final boolean recovered;
+
+    /*
+     * Cached copies of the sequence number and current slot in the header. The occupied bytes run
+     * from the oldest record to the end of the newest, including any bytes skipped at the end of
+     * the ring where a record wrapped, so that empty records are told apart from a full ring.
+     */
+    private long sequence;
+    private long dataStart;
+    private long dataEnd;
+    private int occupied;
+
+    /**
+     * Map a queue onto <code>file</code>. If the file already holds a queue of the same size, for
+     * example one left behind by a process that died, its values are kept; otherwise, or if that
+     * queue is corrupt, the file is (re)initialized as an empty queue.
+     *
+     * @param file
+     *            the file to map
+     * @param maxSize
+     *            the most values the queue holds
+     * @param dataCapacity
+     *            the number of bytes of UTF-8 encoded values the queue holds
+     * @throws IOException
+     *             if the file could not be opened or mapped
+     * @throws IllegalArgumentException
+     *             if either size is not positive, or the file would be larger than 2 GB
+     */
+    public MappedCircularQueue(File file, int maxSize, int dataCapacity) throws IOException {
+        long length = HEADER_SIZE + (long) maxSize * INDEX_ENTRY_SIZE + dataCapacity;
+        if ((maxSize <= 0) || (dataCapacity <= 0) || (length > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Invalid journal of " + maxSize + " values and "
+                    + dataCapacity + " bytes");
+        }
+
+        this.file = file;
+        this.maxSize = maxSize;
+        this.dataCapacity = dataCapacity;
+        this.dataOffset = HEADER_SIZE + maxSize * INDEX_ENTRY_SIZE;
+        this.mapped = map(file, length);
+
+        this.recovered = (mapped.getInt(MAGIC_OFFSET) == MAGIC)
+                && (mapped.getInt(VERSION_OFFSET) == VERSION)
+                && (mapped.getInt(MAX_SIZE_OFFSET) == maxSize)
+                && (mapped.getInt(CAPACITY_OFFSET) == dataCapacity) && recover();
+
+        if (!recovered) {
+            mapped.putInt(MAGIC_OFFSET, MAGIC);
+            mapped.putInt(VERSION_OFFSET, VERSION);
+            mapped.putInt(MAX_SIZE_OFFSET, maxSize);
+            mapped.putInt(CAPACITY_OFFSET, dataCapacity);
+            this.sequence = 0;
+            this.dataStart = 0;
+            this.dataEnd = -1;
+            this.occupied = 0;
+            checkpoint();
+        }
+    }
+
+    /**
+     * Read the current slot of a header that matches this queue, and check that the indexes and
+     * the records they name fit the queue.
+     *
+     * @return <code>false</code> if the header is corrupt
+     */
+    private boolean recover() {
+        sequence = mapped.getLong(SEQUENCE_OFFSET);
+        int cursors = cursors(sequence);
+        dataStart = mapped.getLong(cursors);
+        dataEnd = mapped.getLong(cursors + 8);
+        long bytes = mapped.getLong(cursors + 16);
+
+        boolean valid = (sequence >= 0) && (dataStart >= 0) && (dataEnd >= dataStart - 1)
+                && (dataEnd - dataStart < maxSize) && (bytes >= 0) && (bytes <= dataCapacity)
+                && (!isEmpty() || (bytes == 0));
+        for (long i = dataStart; valid && (i <= dataEnd); i++) {
+            long entry = mapped.getLong(entry(i));
+            long offset = entry >>> 32;
+            long length = entry & 0xFFFFFFFFL;
+            valid = offset + length <= dataCapacity;
+        }
+
+        if (!valid) {
+            logger.warn("Reinitializing " + file + ", its header is corrupt: sequence=" + sequence
+                    + ", start=" + dataStart + ", end=" + dataEnd + ", occupied=" + bytes);
+            return false;
+        }
+        occupied = (int) bytes;
+        return true;
+    }
+
+    private static MappedByteBuffer map(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            /* The mapping stays valid after the channel is closed */
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } finally {
+            StreamHelper.close(raf);
+        }
+    }
+
+    /**
+     * Insert a value at the end of the queue, deleting as many of the oldest values as needed to
+     * make room for it.
+     * <p>
+     * Null values are not inserted into the queue.
+     *
+     * @param value
+     *            to be inserted
+     * @return true if value was inserted, false otherwise
+     * @throws IllegalArgumentException
+     *             if the encoded value is larger than the whole data region
+     */
+    public boolean add(String value) {
+        if (value == null) {
+            return false;
+        }
+
+        byte[] bytes = value.getBytes(UTF8);
+        if (bytes.length > dataCapacity) {
+            throw new IllegalArgumentException("Value of " + bytes.length
+                    + " bytes is larger than the journal's " + dataCapacity + " bytes");
+        }
+
+        /* Records are kept whole, so one that does not fit before the end of the ring wraps */
+        int tail = isEmpty() ? 0 : end(dataEnd);
+        int offset = (tail + bytes.length > dataCapacity) ? 0 : tail;
+        int needed = ((offset < tail) ? dataCapacity - tail : 0) + bytes.length;
+
+        /* Delete the oldest values until the unoccupied bytes take the new record */
+        int deleted = 0;
+        while (!isEmpty() && ((getSize() == maxSize) || (occupied + needed > dataCapacity))) {
+            long oldest = mapped.getLong(entry(dataStart));
+            dataStart++;
+            deleted++;
+            occupied = isEmpty() ? 0 : occupied - released(oldest);
+        }
+        if (isEmpty()) {
+            offset = 0;
+            needed = bytes.length;
+        }
+        if (deleted > 0) {
+            checkpoint();
+        }
+
+        ByteBuffer data = data();
+        data.position(offset);
+        data.put(bytes);
+
+        dataEnd++;
+        occupied += needed;
+        mapped.putLong(entry(dataEnd), ((long) offset << 32) | bytes.length);
+        checkpoint();
+        return true;
+    }
+
+    /**
+     * Returns the value at the specified index. If the index does not lie in the range of the
+     * actual data in the queue, it'll throw an {@link IndexOutOfBoundsException}
+     *
+     * @param index
+     *            the absolute index of the value
+     * @return the value
+     * @throws IndexOutOfBoundsException
+     *             if the value at that index is not in the queue
+     */
+    public String get(long index) throws IndexOutOfBoundsException {
+        if ((index < dataStart) || (index > dataEnd)) {
+            throw new IndexOutOfBoundsException("Index being accessed is " + index);
+        }
+
+        long entry = mapped.getLong(entry(index));
+        byte[] bytes = new byte[(int) entry];
+        ByteBuffer data = data();
+        data.position((int) (entry >>> 32));
+        data.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Getter method for the absolute index of the oldest value.
+     *
+     * @return long
+     */
+    public long getDataStartIndex() {
+        return dataStart;
+    }
+
+    /**
+     * Getter method for the absolute index of the newest value, which is one less than the data
+     * start index while the queue is empty.
+     *
+     * @return long
+     */
+    public long getDataEndIndex() {
+        return dataEnd;
+    }
+
+    /**
+     * Returns the number of values in the queue.
+     *
+     * @return the size
+     */
+    public int getSize() {
+        return (int) (dataEnd - dataStart + 1);
+    }
+
+    /**
+     * Check to see if the queue is empty.
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return dataEnd < dataStart;
+    }
+
+    /**
+     * Get the most values the queue holds.
+     *
+     * @return the size given at construction
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the number of bytes of UTF-8 encoded values the queue holds.
+     *
+     * @return the size of the data region
+     */
+    public int getDataCapacity() {
+        return dataCapacity;
+    }
+
+    /**
+     * Returns <code>true</code> if this queue was opened over a file that already held a queue of
+     * the same size.
+     *
+     * @return <code>true</code> if existing values were found in the file
+     */
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Get the file this queue is mapped onto.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Flushes the queue to the file. The operating system writes the pages back on its own even if
+     * the process dies, so this is only needed to survive the machine going down. The mapping
+     * itself is released once this queue has been garbage collected.
+     */
+    public void force() {
+        mapped.force();
+    }
+
+    /**
+     * Record the indexes in the slot not in use, then make it current by advancing the sequence
+     * number with a single aligned write, so a crash leaves either the old or the new indexes.
+     */
+    private void checkpoint() {
+        long next = sequence + 1;
+        int cursors = cursors(next);
+        mapped.putLong(cursors, dataStart);
+        mapped.putLong(cursors + 8, dataEnd);
+        mapped.putLong(cursors + 16, occupied);
+        mapped.putLong(SEQUENCE_OFFSET, next);
+        sequence = next;
+    }
+
+    /**
+     * Get the position in the header of the slot of indexes chosen by <code>sequence</code>.
+     */
+    static int cursors(long sequence) {
+        return CURSORS_OFFSET + (int) (sequence & 1) * CURSORS_SIZE;
+    }
+
+    private int entry(long index) {
+        return HEADER_SIZE + (int) (index % maxSize) * INDEX_ENTRY_SIZE;
+    }
+
+    private int offset(long index) {
+        return (int) (mapped.getLong(entry(index)) >>> 32);
+    }
+
+    private int end(long index) {
+        long entry = mapped.getLong(entry(index));
+        return (int) (entry >>> 32) + (int) entry;
+    }
+
+    /**
+     * Get the number of bytes freed by deleting the record of the given index entry: its own bytes
+     * and, if the new oldest record wrapped to the front of the ring, those skipped after it. Must
+     * be called after the value has been deleted, while the queue is not empty.
+     */
+    private int released(long entry) {
+        int end = (int) (entry >>> 32) + (int) entry;
+        int skipped = (offset(dataStart) < end) ? dataCapacity - end : 0;
+        return (int) entry + skipped;
+    }
+
+    private ByteBuffer data() {
+        ByteBuffer dup = mapped.duplicate();
+        dup.position(dataOffset);
+        return dup.slice();
+    }
+}
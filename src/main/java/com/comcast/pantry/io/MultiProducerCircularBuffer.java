@@ -0,0 +1,249 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A circular buffer that lets any number of threads write into it without holding a lock while
+ * they copy. Each {@link #write(byte[])} is treated as one record:
+ * <ol>
+ * <li>the writer <em>claims</em> a contiguous range of the ring that is large enough for the whole
+ * record with a single compare-and-set on the claim sequence,</li>
+ * <li>copies the record into that range while other writers copy into their own ranges, and</li>
+ * <li><em>publishes</em> the range once every writer that claimed before it has published.</li>
+ * </ol>
+ * Because the range is claimed up front, one record is never interleaved with another, and because
+ * ranges are published in claim order the reader only ever sees complete records.
+ * <p>
+ * Readers keep the {@link CircularBuffer#read(byte[])} semantics. They are serialized with each
+ * other, but never with the writers.
+ * <p>
+ * A record can be at most as large as the buffer itself, since it has to fit in the ring all at
+ * once. Since ranges are published in claim order, a writer that is descheduled in the middle of
+ * its copy holds up the writers that claimed after it, so this buffer works best when there are no
+ * more writers than available cores.
+ */
+public class MultiProducerCircularBuffer implements ByteRing {
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final boolean allowPartial;
+
+    /** The next position to read */
+    private final Sequence head = new Sequence(0);
+
+    /** The end of the last range claimed by a writer */
+    private final Sequence claimed = new Sequence(0);
+
+    /** The end of the last range published by a writer; everything before this may be read */
+    private final Sequence published = new Sequence(0);
+
+    /** Serializes readers with each other */
+    private final Object readLock = new Object();
+
+    private volatile boolean closed;
+
+    /**
+     * Construct a new MultiProducerCircularBuffer of the given size.
+     *
+     * @param size
+     *            the size of the given circular buffer, which is also the largest record that can
+     *            be written
+     */
+    public MultiProducerCircularBuffer(int size) {
+        this(size, false);
+    }
+
+    /**
+     * Construct a new MultiProducerCircularBuffer of the given size.
+     *
+     * @param size
+     *            the size of the given circular buffer, which is also the largest record that can
+     *            be written
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     */
+    public MultiProducerCircularBuffer(int size, boolean allowPartial) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        this.buffer = new byte[size];
+        this.capacity = size;
+        this.allowPartial = allowPartial;
+    }
+
+    /**
+     * Atomically adds the entire contents of <code>b</code> to the buffer as a single record,
+     * blocking until there is enough free space for all of it.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>b</code> is larger than the buffer
+     * @see com.comcast.pantry.io.ByteRing#write(byte[])
+     */
+    public void write(byte[] b) throws InterruptedIOException {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Atomically adds <code>len</code> bytes of <code>b</code> starting at <code>off</code> to the
+     * buffer as a single record, blocking until there is enough free space for all of it.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>len</code> is larger than the buffer
+     * @see com.comcast.pantry.io.ByteRing#write(byte[], int, int)
+     */
+    public void write(byte[] b, int off, int len) throws InterruptedIOException {
+        CircularBuffer.checkBounds(b, off, len);
+        if (len > capacity) {
+            throw new IllegalArgumentException("Cannot write a record of " + len
+                    + " bytes to a buffer of " + capacity + " bytes");
+        }
+
+        /* Claim a contiguous range for the whole record */
+        int idle = 0;
+        long start;
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("Cannot write to a closed stream");
+            }
+
+            start = claimed.get();
+            if (start + len - head.get() > capacity) {
+                Backoff.idle(idle++);
+            } else if (claimed.compareAndSet(start, start + len)) {
+                break;
+            }
+        }
+
+        /* Copy into our range without holding anything */
+        int index = (int) (start % capacity);
+        int first = Math.min(len, capacity - index);
+
+        System.arraycopy(b, off, buffer, index, first);
+        if (first < len) {
+            System.arraycopy(b, off + first, buffer, 0, len - first);
+        }
+
+        /*
+         * Publish once all earlier claims have been published. This wait cannot be abandoned,
+         * since every later writer is waiting on us in turn.
+         */
+        idle = 0;
+        while (published.get() != start) {
+            Backoff.pause(idle++);
+        }
+        published.setOrdered(start + len);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#read(byte[])
+     */
+    public int read(byte[] b) throws InterruptedIOException {
+        return read(b, 0, b.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#read(byte[], int, int)
+     */
+    public int read(byte[] b, int off, int len) throws InterruptedIOException {
+        CircularBuffer.checkBounds(b, off, len);
+
+        synchronized (readLock) {
+            if (closed) {
+                return -1;
+            }
+
+            int n = 0;
+            int idle = 0;
+            long h = head.get();
+
+            while (n < len) {
+                long available = published.get() - h;
+
+                if (available == 0) {
+                    if (allowPartial && (n > 0)) {
+                        return n;
+                    }
+
+                    /*
+                     * A writer may have published more data right before the close, so only
+                     * give up once the cursor has been re-read after seeing the close.
+                     */
+                    if (closed) {
+                        if (published.get() == h) {
+                            return (0 == n) ? -1 : n;
+                        }
+                        continue;
+                    }
+
+                    Backoff.idle(idle++);
+                    continue;
+                }
+
+                int count = (int) Math.min(available, len - n);
+                int index = (int) (h % capacity);
+                int first = Math.min(count, capacity - index);
+
+                System.arraycopy(buffer, index, b, off + n, first);
+                if (first < count) {
+                    System.arraycopy(buffer, 0, b, off + n + first, count - first);
+                }
+
+                n += count;
+                h += count;
+                head.setOrdered(h);
+                idle = 0;
+            }
+
+            return n;
+        }
+    }
+
+    /**
+     * Get the total number of bytes this buffer can hold.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of published bytes currently waiting to be read. This is only a snapshot as
+     * the readers and writers may be moving concurrently.
+     *
+     * @return the number of readable bytes
+     */
+    public int getUsed() {
+        long h = head.get();
+        return (int) Math.min(published.get() - h, capacity);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    public void close() {
+        this.closed = true;
+    }
+}
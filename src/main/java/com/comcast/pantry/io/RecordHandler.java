@@ -0,0 +1,37 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+/**
+ * Receives the records drained from a {@link FramedCircularBuffer} by
+ * {@link FramedCircularBuffer#drainTo(RecordHandler, int)}.
+ */
+public interface RecordHandler {
+
+    /**
+     * Handle one record. The array is reused for the following records, so the record must be
+     * processed or copied before returning.
+     *
+     * @param b
+     *            the array holding the record
+     * @param off
+     *            the offset of the record in <code>b</code>
+     * @param len
+     *            the length of the record
+     */
+    void onRecord(byte[] b, int off, int len);
+}
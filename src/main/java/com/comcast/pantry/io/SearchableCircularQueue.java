@@ -0,0 +1,354 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link CircularQueue} of lines that can be searched, such as the tail of a process's log that
+ * operators want to grep. Searches find the absolute indexes of the lines containing a substring or
+ * matching a regular expression, oldest first.
+ * <p>
+ * Without an index every search reads each line of its range. A queue created with an index also
+ * keeps, for every trigram (run of three characters) in its lines, the indexes of the lines
+ * containing it, updated as lines are added and deleted. A substring search of three or more
+ * characters then only reads the lines holding the query's rarest trigram, which takes a search
+ * over a full window of thousands of lines from milliseconds to microseconds when the query is
+ * selective. The index costs roughly eight bytes per character of the lines held and makes adding
+ * a line a few microseconds slower, and regular expression searches always read every line.
+ * <p>
+ * This class is not thread safe.
+ */
+public class SearchableCircularQueue extends CircularQueue<String> {
+
+    private static final int GRAM = 3;
+
+    private static final long[] NONE = new long[0];
+
+    /* The indexes of the lines containing each trigram, or null if the queue is not indexed */
+    private Map<Long, Postings> index;
+
+    /**
+     * Create an unindexed searchable queue with desired size
+     *
+     * @param size
+     *            the most lines the queue holds
+     */
+    public SearchableCircularQueue(int size) {
+        this(size, false);
+    }
+
+    /**
+     * Create a searchable queue with desired size
+     *
+     * @param size
+     *            the most lines the queue holds
+     * @param indexed
+     *            true to keep a trigram index of the lines for fast substring searches
+     */
+    public SearchableCircularQueue(int size, boolean indexed) {
+        super(size);
+        if (indexed) {
+            index = new HashMap<Long, Postings>();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this queue keeps a trigram index of its lines.
+     *
+     * @return <code>true</code> if substring searches use an index
+     */
+    public boolean isIndexed() {
+        return index != null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.AbstractCircularQueue#init()
+     */
+    @Override
+    protected void init() {
+        super.init();
+        /* Called from the constructor before the index exists */
+        if (index != null) {
+            index.clear();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularQueue#release(int)
+     */
+    @Override
+    protected void release(int slot) {
+        if (index != null) {
+            long deleted = getDataStartIndex();
+            String line = get(deleted);
+            for (int i = 0; i + GRAM <= line.length(); i++) {
+                Long gram = gram(line, i);
+                Postings postings = index.get(gram);
+                /* The oldest line is first in every list it is in, and only once */
+                if ((postings != null) && (postings.first() == deleted)) {
+                    postings.removeFirst();
+                    if (postings.size() == 0) {
+                        index.remove(gram);
+                    }
+                }
+            }
+        }
+        super.release(slot);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularQueue#add(java.lang.Object)
+     */
+    @Override
+    public boolean add(String value) {
+        if (!super.add(value)) {
+            return false;
+        }
+
+        if (index != null) {
+            long added = getDataEndIndex();
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                Long gram = gram(value, i);
+                Postings postings = index.get(gram);
+                if (postings == null) {
+                    postings = new Postings();
+                    index.put(gram, postings);
+                }
+                /* A trigram repeated in the line is recorded once */
+                if ((postings.size() == 0) || (postings.last() != added)) {
+                    postings.add(added);
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularQueue#addAll(java.util.Collection)
+     */
+    @Override
+    public boolean addAll(Collection<? extends String> values) {
+        boolean added = false;
+        for (String value : values) {
+            added |= add(value);
+        }
+        return added;
+    }
+
+    /**
+     * Find the lines in the queue containing <code>substring</code>.
+     *
+     * @param substring
+     *            the text to look for
+     * @return the absolute indexes of the matching lines, in ascending order
+     */
+    public long[] search(String substring) {
+        return isEmpty() ? NONE : search(substring, getDataStartIndex(), getDataEndIndex());
+    }
+
+    /**
+     * Find the lines from <code>from</code> to <code>to</code> containing <code>substring</code>.
+     *
+     * @param substring
+     *            the text to look for
+     * @param from
+     *            the absolute index of the first line to search
+     * @param to
+     *            the absolute index of the last line to search, inclusive
+     * @return the absolute indexes of the matching lines, in ascending order
+     * @throws IndexOutOfBoundsException
+     *             if the range is not in the queue
+     */
+    public long[] search(String substring, long from, long to) throws IndexOutOfBoundsException {
+        checkRange(from, to);
+        Matches matches = new Matches();
+
+        if ((index == null) || (substring.length() < GRAM)) {
+            for (long i = from; i <= to; i++) {
+                if (get(i).contains(substring)) {
+                    matches.add(i);
+                }
+            }
+            return matches.toArray();
+        }
+
+        /* Only the lines holding the query's rarest trigram can match */
+        Postings rarest = null;
+        for (int i = 0; i + GRAM <= substring.length(); i++) {
+            Postings postings = index.get(gram(substring, i));
+            if (postings == null) {
+                return NONE;
+            }
+            if ((rarest == null) || (postings.size() < rarest.size())) {
+                rarest = postings;
+            }
+        }
+
+        for (int i = rarest.lowerBound(from); i < rarest.size(); i++) {
+            long candidate = rarest.get(i);
+            if (candidate > to) {
+                break;
+            }
+            if (get(candidate).contains(substring)) {
+                matches.add(candidate);
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Find the lines in the queue in which <code>pattern</code> is found.
+     *
+     * @param pattern
+     *            the regular expression to look for
+     * @return the absolute indexes of the matching lines, in ascending order
+     */
+    public long[] search(Pattern pattern) {
+        return isEmpty() ? NONE : search(pattern, getDataStartIndex(), getDataEndIndex());
+    }
+
+    /**
+     * Find the lines from <code>from</code> to <code>to</code> in which <code>pattern</code> is
+     * found, as by {@link Matcher#find()}. Every line of the range is read.
+     *
+     * @param pattern
+     *            the regular expression to look for
+     * @param from
+     *            the absolute index of the first line to search
+     * @param to
+     *            the absolute index of the last line to search, inclusive
+     * @return the absolute indexes of the matching lines, in ascending order
+     * @throws IndexOutOfBoundsException
+     *             if the range is not in the queue
+     */
+    public long[] search(Pattern pattern, long from, long to) throws IndexOutOfBoundsException {
+        checkRange(from, to);
+        Matches matches = new Matches();
+        Matcher matcher = pattern.matcher("");
+
+        for (long i = from; i <= to; i++) {
+            if (matcher.reset(get(i)).find()) {
+                matches.add(i);
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Get the trigram starting at <code>offset</code> in <code>s</code>, packed into a long.
+     */
+    private static Long gram(String s, int offset) {
+        return Long.valueOf(((long) s.charAt(offset) << 32) | ((long) s.charAt(offset + 1) << 16)
+                | s.charAt(offset + 2));
+    }
+
+    /**
+     * The ascending indexes of the lines containing one trigram, kept in a ring that grows as
+     * needed, since lines are added at the end and deleted from the start.
+     */
+    private static final class Postings {
+
+        private long[] items = new long[4];
+        private int head;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        long get(int i) {
+            return items[(head + i) & (items.length - 1)];
+        }
+
+        long first() {
+            return items[head];
+        }
+
+        long last() {
+            return get(size - 1);
+        }
+
+        void add(long value) {
+            if (size == items.length) {
+                long[] grown = new long[items.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = get(i);
+                }
+                items = grown;
+                head = 0;
+            }
+            items[(head + size) & (items.length - 1)] = value;
+            size++;
+        }
+
+        void removeFirst() {
+            head = (head + 1) & (items.length - 1);
+            size--;
+        }
+
+        /**
+         * Get the position of the first index at or after <code>value</code>, or the size if there
+         * is none.
+         */
+        int lowerBound(long value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid) < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * The indexes found by a search, in a growing array.
+     */
+    private static final class Matches {
+
+        private long[] items = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == items.length) {
+                long[] grown = new long[items.length * 2];
+                System.arraycopy(items, 0, grown, 0, size);
+                items = grown;
+            }
+            items[size++] = value;
+        }
+
+        long[] toArray() {
+            long[] result = new long[size];
+            System.arraycopy(items, 0, result, 0, size);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A circular buffer made of fixed-size chunks taken from a {@link ChunkPool}, for capacities where
+ * a single array would be a problem. Positions are <code>long</code>s, so the capacity may exceed
+ * 2 GB, and no array larger than a chunk is ever allocated. A chunk is only taken from the pool
+ * when data is written into it and goes back as soon as all of its data has been read, so an idle
+ * buffer holds at most one chunk and several buffers can share the memory of one pool.
+ * <p>
+ * The blocking contract is the same as {@link CircularBuffer}'s: writers wait while the buffer is
+ * full, readers wait while it is empty, and closing the buffer wakes both up.
+ */
+public class SegmentedCircularBuffer implements ByteRing {
+
+    private final long capacity;
+    private final int chunkSize;
+    private final ChunkPool pool;
+    private final boolean allowPartial;
+
+    /**
+     * The chunks that hold data, indexed by the position of their first byte divided by the chunk
+     * size, modulo the number of slots. A slot is <code>null</code> while it holds no data.
+     */
+    private final byte[][] chunks;
+
+    /* The positions of the next byte to read and to write; they only ever grow */
+    private long head;
+    private long tail;
+    private boolean closed;
+
+    /**
+     * Construct a new SegmentedCircularBuffer.
+     *
+     * @param capacity
+     *            the most bytes the buffer holds at once
+     * @param pool
+     *            the pool to take chunks from
+     */
+    public SegmentedCircularBuffer(long capacity, ChunkPool pool) {
+        this(capacity, pool, false);
+    }
+
+    /**
+     * Construct a new SegmentedCircularBuffer.
+     *
+     * @param capacity
+     *            the most bytes the buffer holds at once
+     * @param pool
+     *            the pool to take chunks from
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     */
+    public SegmentedCircularBuffer(long capacity, ChunkPool pool, boolean allowPartial) {
+        this.chunkSize = pool.getChunkSize();
+        long slots = (capacity + chunkSize - 1) / chunkSize + 1;
+        if ((capacity <= 0) || (slots > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity + " for "
+                    + chunkSize + " byte chunks");
+        }
+
+        this.capacity = capacity;
+        this.pool = pool;
+        this.allowPartial = allowPartial;
+        this.chunks = new byte[(int) slots][];
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#write(byte[])
+     */
+    public void write(byte[] b) throws InterruptedIOException {
+        write(b, 0, b.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#write(byte[], int, int)
+     */
+    public synchronized void write(byte[] b, int off, int len) throws InterruptedIOException {
+        CircularBuffer.checkBounds(b, off, len);
+        int end = off + len;
+
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("Cannot write to a closed stream");
+            }
+            if (tail - head == capacity) {
+                await();
+                continue;
+            }
+
+            off += put(b, off, end - off);
+            this.notifyAll();
+
+            if (off == end) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#read(byte[])
+     */
+    public int read(byte[] b) throws InterruptedIOException {
+        return read(b, 0, b.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#read(byte[], int, int)
+     */
+    public synchronized int read(byte[] b, int off, int len) throws InterruptedIOException {
+        CircularBuffer.checkBounds(b, off, len);
+        int n = 0;
+
+        while (true) {
+            if (closed) {
+                return (0 == n) ? -1 : n;
+            }
+            if (head == tail) {
+                if (allowPartial && (n > 0)) {
+                    return n;
+                }
+                await();
+                continue;
+            }
+
+            n += take(b, off + n, len - n);
+            this.notifyAll();
+
+            if (n == len) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Get the most bytes the buffer holds at once.
+     *
+     * @return the capacity
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of bytes that have been written but not yet read.
+     *
+     * @return the number of unread bytes
+     */
+    public synchronized long getUsed() {
+        return tail - head;
+    }
+
+    /**
+     * Get the number of chunks the buffer currently holds.
+     *
+     * @return the number of chunks taken from the pool
+     */
+    public synchronized int getChunkCount() {
+        int count = 0;
+        for (byte[] chunk : chunks) {
+            if (chunk != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Closes the buffer and gives all of its chunks back to the pool. Any unread data is lost.
+     *
+     * @see java.io.Closeable#close()
+     */
+    public synchronized void close() {
+        if (!closed) {
+            for (int i = 0; i < chunks.length; i++) {
+                if (chunks[i] != null) {
+                    pool.release(chunks[i]);
+                    chunks[i] = null;
+                }
+            }
+        }
+        closed = true;
+        this.notifyAll();
+    }
+
+    /**
+     * Wait until another thread reads, writes or closes. Must be called while holding the lock.
+     */
+    private void await() throws InterruptedIOException {
+        try {
+            this.wait();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private int slot(long position) {
+        return (int) ((position / chunkSize) % chunks.length);
+    }
+
+    /**
+     * Copy as much of <code>b</code> as fits, one chunk at a time, taking chunks from the pool as
+     * needed. Must be called while holding the lock.
+     *
+     * @return the number of bytes copied
+     */
+    private int put(byte[] b, int off, int len) {
+        int total = 0;
+
+        while ((total < len) && (tail - head < capacity)) {
+            int slot = slot(tail);
+            if (chunks[slot] == null) {
+                chunks[slot] = pool.acquire();
+            }
+
+            int index = (int) (tail % chunkSize);
+            int n = (int) Math.min(Math.min(chunkSize - index, len - total),
+                    capacity - (tail - head));
+            System.arraycopy(b, off + total, chunks[slot], index, n);
+            total += n;
+            tail += n;
+        }
+
+        return total;
+    }
+
+    /**
+     * Copy as much of the unread data as fits into <code>b</code>, one chunk at a time, giving
+     * every chunk that has been read completely back to the pool. Must be called while holding the
+     * lock.
+     *
+     * @return the number of bytes copied
+     */
+    private int take(byte[] b, int off, int len) {
+        int total = 0;
+
+        while ((total < len) && (head < tail)) {
+            int slot = slot(head);
+            int index = (int) (head % chunkSize);
+            int n = (int) Math.min(Math.min(chunkSize - index, len - total), tail - head);
+            System.arraycopy(chunks[slot], index, b, off + total, n);
+            total += n;
+            head += n;
+
+            if (head % chunkSize == 0) {
+                pool.release(chunks[slot]);
+                chunks[slot] = null;
+            }
+        }
+
+        return total;
+    }
+}
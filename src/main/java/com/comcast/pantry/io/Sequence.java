@@ -0,0 +1,104 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Left-hand cache line padding for {@link Sequence}.
+ */
+class LhsPadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * The actual value held by a {@link Sequence}.
+ */
+class Value extends LhsPadding {
+    protected volatile long value;
+}
+
+/**
+ * Right-hand cache line padding for {@link Sequence}.
+ */
+class RhsPadding extends Value {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * A cursor into a ring that sits on its own cache line, so that a producer updating one cursor
+ * does not invalidate the line holding the cursor the consumer is updating. The padding is done
+ * through inheritance because the JVM is free to reorder the fields within a single class.
+ */
+class Sequence extends RhsPadding {
+
+    private static final AtomicLongFieldUpdater<Value> UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+
+    /**
+     * Construct a new Sequence starting at the given value.
+     *
+     * @param initial
+     *            the initial value
+     */
+    Sequence(long initial) {
+        UPDATER.lazySet(this, initial);
+    }
+
+    /**
+     * Volatile read of the current value.
+     *
+     * @return the current value
+     */
+    long get() {
+        return value;
+    }
+
+    /**
+     * Ordered write of a new value. All writes made before this call are visible to any thread that
+     * subsequently reads the new value, but unlike a volatile write this does not wait for the
+     * store buffer to drain.
+     *
+     * @param newValue
+     *            the new value
+     */
+    void setOrdered(long newValue) {
+        UPDATER.lazySet(this, newValue);
+    }
+
+    /**
+     * Atomically set the value to <code>update</code> if it is currently <code>expect</code>.
+     *
+     * @param expect
+     *            the expected value
+     * @param update
+     *            the new value
+     * @return <code>true</code> if successful
+     */
+    boolean compareAndSet(long expect, long update) {
+        return UPDATER.compareAndSet(this, expect, update);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A lock-free circular buffer for exactly one writing thread and one reading thread. It honors the
+ * same read/write/close contract as {@link CircularBuffer}, but instead of taking a lock for
+ * every chunk the writer and reader each own a padded cursor ({@link Sequence}) and only ever
+ * publish their own cursor with an ordered write. When the buffer is full or empty the blocked side
+ * spins briefly, then yields, then parks for short intervals until the other side makes progress.
+ * <p>
+ * Using more than one writer or more than one reader at a time will corrupt the buffer; use
+ * {@link CircularBuffer} in that case.
+ * <p>
+ * Unlike {@link CircularBuffer}, a write never gives up on a full buffer after a timeout. It blocks
+ * until all the data has been written, the buffer is closed or the writer is interrupted.
+ */
+public class SpscCircularBuffer implements ByteRing {
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final boolean allowPartial;
+
+    /** The next position to read, only ever written by the reader */
+    private final Sequence head = new Sequence(0);
+
+    /** The next position to write, only ever written by the writer */
+    private final Sequence tail = new Sequence(0);
+
+    /** The writer's last view of {@link #head}, to avoid reading the reader's cache line */
+    private long cachedHead;
+
+    /** The reader's last view of {@link #tail}, to avoid reading the writer's cache line */
+    private long cachedTail;
+
+    private volatile boolean closed;
+
+    /**
+     * Construct a new SpscCircularBuffer of the given size.
+     *
+     * @param size
+     *            the size of the given circular buffer
+     */
+    public SpscCircularBuffer(int size) {
+        this(size, false);
+    }
+
+    /**
+     * Construct a new SpscCircularBuffer of the given size.
+     *
+     * @param size
+     *            the size of the given circular buffer
+     * @param allowPartial
+     *            true if the when reading data and there is not enough data to
+     *            fill the whole read byte array, then a partial amount of data will be read
+     *            if false, then the read will block until there is enough data to
+     *            fill the read buffer
+     */
+    public SpscCircularBuffer(int size, boolean allowPartial) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        this.buffer = new byte[size];
+        this.capacity = size;
+        this.allowPartial = allowPartial;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#write(byte[])
+     */
+    public void write(byte[] b) throws InterruptedIOException {
+        write(b, 0, b.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#write(byte[], int, int)
+     */
+    public void write(byte[] b, int off, int len) throws InterruptedIOException {
+        CircularBuffer.checkBounds(b, off, len);
+        int end = off + len;
+        int idle = 0;
+        long t = tail.get();
+
+        while (off < end) {
+            if (closed) {
+                throw new IllegalStateException("Cannot write to a closed stream");
+            }
+
+            /* Only look at the reader's cursor when our cached copy says we are full */
+            long free = capacity - (t - cachedHead);
+            if (free == 0) {
+                cachedHead = head.get();
+                free = capacity - (t - cachedHead);
+                if (free == 0) {
+                    Backoff.idle(idle++);
+                    continue;
+                }
+            }
+
+            int n = (int) Math.min(free, end - off);
+            int index = (int) (t % capacity);
+            int first = Math.min(n, capacity - index);
+
+            System.arraycopy(b, off, buffer, index, first);
+            if (first < n) {
+                System.arraycopy(b, off + first, buffer, 0, n - first);
+            }
+
+            off += n;
+            t += n;
+            tail.setOrdered(t);
+            idle = 0;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#read(byte[])
+     */
+    public int read(byte[] b) throws InterruptedIOException {
+        return read(b, 0, b.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.ByteRing#read(byte[], int, int)
+     */
+    public int read(byte[] b, int off, int len) throws InterruptedIOException {
+        CircularBuffer.checkBounds(b, off, len);
+        if (closed) {
+            return -1;
+        }
+
+        int n = 0;
+        int idle = 0;
+        long h = head.get();
+
+        while (n < len) {
+            /* Only look at the writer's cursor when our cached copy says we are empty */
+            long available = cachedTail - h;
+            if (available == 0) {
+                cachedTail = tail.get();
+                available = cachedTail - h;
+            }
+
+            if (available == 0) {
+                if (allowPartial && (n > 0)) {
+                    return n;
+                }
+
+                /*
+                 * The writer may have published more data right before closing, so only give up
+                 * once the cursor has been re-read after seeing the close.
+                 */
+                if (closed) {
+                    cachedTail = tail.get();
+                    if (cachedTail == h) {
+                        return (0 == n) ? -1 : n;
+                    }
+                    continue;
+                }
+
+                Backoff.idle(idle++);
+                continue;
+            }
+
+            int count = (int) Math.min(available, len - n);
+            int index = (int) (h % capacity);
+            int first = Math.min(count, capacity - index);
+
+            System.arraycopy(buffer, index, b, off + n, first);
+            if (first < count) {
+                System.arraycopy(buffer, 0, b, off + n + first, count - first);
+            }
+
+            n += count;
+            h += count;
+            head.setOrdered(h);
+            idle = 0;
+        }
+
+        return n;
+    }
+
+    /**
+     * Get the total number of bytes this buffer can hold.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of bytes currently waiting to be read. This is only a snapshot as the reader
+     * and writer may be moving concurrently.
+     *
+     * @return the number of readable bytes
+     */
+    public int getUsed() {
+        long h = head.get();
+        return (int) Math.min(tail.get() - h, capacity);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    public void close() {
+        this.closed = true;
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.Collection;
+
+/**
+ * A {@link CircularQueue} that records when each value was added, so values can be looked up by
+ * time as well as by absolute index, for example to find what a process printed between two
+ * moments. The timestamps are kept in a parallel <code>long[]</code>, and since they never go
+ * backwards both {@link #indexAtOrAfter(long)} and {@link #range(long, long)} are binary searches
+ * over the queue, taking O(log n) time.
+ * <p>
+ * Values added without a timestamp are stamped with {@link System#currentTimeMillis()}. A
+ * timestamp earlier than the newest one in the queue, as from a clock stepped back, is recorded as
+ * the newest one instead, so the timestamps stay in order.
+ *
+ * @param <T>
+ *            the type of the values
+ */
+public class TimestampedCircularQueue<T> extends CircularQueue<T> {
+
+    private long[] timestamps;
+
+    /**
+     * Create a timestamped circular queue with desired size
+     *
+     * @param size
+     *            the most values the queue holds
+     */
+    public TimestampedCircularQueue(int size) {
+        super(size);
+    }
+
+    /**
+     * Creates a timestamped circular queue with default size as {@link #DEFAULT_MAX_SIZE}
+     */
+    public TimestampedCircularQueue() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.comcast.pantry.io.CircularQueue#allocate(int)
+     */
+    @Override
+    protected void allocate(int size) {
+        super.allocate(size);
+        timestamps = new long[size];
+    }
+
+    /**
+     * Insert a value into the queue, stamped with the current time.
+     *
+     * @param value
+     *            to be inserted
+     * @return true if value was inserted, false otherwise
+     * @see #add(Object, long)
+     */
+    @Override
+    public boolean add(T value) {
+        return add(value, System.currentTimeMillis());
+    }
+
+    /**
+     * Insert a value into the queue with the given timestamp, as by {@link CircularQueue#add(Object)}.
+     *
+     * @param value
+     *            to be inserted
+     * @param timeMillis
+     *            when the value was produced, in milliseconds since the epoch
+     * @return true if value was inserted, false otherwise
+     */
+    public boolean add(T value, long timeMillis) {
+        long newest = isEmpty() ? Long.MIN_VALUE : timestamps[storageIndex(getDataEndIndex())];
+        if (!super.add(value)) {
+            return false;
+        }
+        timestamps[storageIndex(getDataEndIndex())] = Math.max(timeMillis, newest);
+        return true;
+    }
+
+    /**
+     * Insert every value of <code>values</code> into the queue, in iteration order, all stamped
+     * with the current time. Null values are skipped.
+     *
+     * @param values
+     *            the values to insert
+     * @return true if any value was inserted
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> values) {
+        long now = System.currentTimeMillis();
+        boolean added = false;
+        for (T value : values) {
+            added |= add(value, now);
+        }
+        return added;
+    }
+
+    /**
+     * Returns the timestamp of the value at the specified index.
+     *
+     * @param index
+     *            the absolute index of the value
+     * @return when the value was added, in milliseconds since the epoch
+     * @throws IndexOutOfBoundsException
+     *             if the value at that index is not in the queue
+     */
+    public long getTimestamp(long index) throws IndexOutOfBoundsException {
+        return timestamps[slot(index)];
+    }
+
+    /**
+     * Find the oldest value added at or after <code>timeMillis</code>.
+     *
+     * @param timeMillis
+     *            the time, in milliseconds since the epoch
+     * @return the absolute index of the value, or <code>getDataEndIndex() + 1</code> if every
+     *         value in the queue is older
+     */
+    public long indexAtOrAfter(long timeMillis) {
+        long low = getDataStartIndex();
+        long high = getDataEndIndex() + 1;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (timestamps[storageIndex(mid)] < timeMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the values added from <code>fromTime</code> to <code>toTime</code>, both included.
+     * The window can be read with {@link #copyRange(long, long, Object[])} or {@link #get(long)}.
+     *
+     * @param fromTime
+     *            the start of the period, in milliseconds since the epoch
+     * @param toTime
+     *            the end of the period, in milliseconds since the epoch, inclusive
+     * @return the window of absolute indexes, which is empty if no value was added in the period
+     */
+    public Window range(long fromTime, long toTime) {
+        long from = indexAtOrAfter(fromTime);
+        if (toTime < fromTime) {
+            return new Window(from, from);
+        }
+        long to = (toTime == Long.MAX_VALUE) ? getDataEndIndex() + 1 : indexAtOrAfter(toTime + 1);
+        return new Window(from, to);
+    }
+
+    /**
+     * A run of consecutive absolute indexes found by {@link TimestampedCircularQueue#range(long,
+     * long)}, from {@link #getFromIndex()}, inclusive, to {@link #getToIndex()}, exclusive, as
+     * taken by {@link CircularQueue#copyRange(long, long, Object[])}.
+     */
+    public static final class Window {
+
+        private final long from;
+        private final long to;
+
+        Window(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Get the absolute index of the first value in the window.
+         *
+         * @return the first index
+         */
+        public long getFromIndex() {
+            return from;
+        }
+
+        /**
+         * Get the absolute index after the last value in the window.
+         *
+         * @return the index after the last one
+         */
+        public long getToIndex() {
+            return to;
+        }
+
+        /**
+         * Get the number of values in the window.
+         *
+         * @return the size
+         */
+        public int getSize() {
+            return (int) (to - from);
+        }
+
+        /**
+         * Returns <code>true</code> if no value is in the window.
+         *
+         * @return <code>true</code> if the window is empty
+         */
+        public boolean isEmpty() {
+            return to == from;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "[" + from + ", " + to + ")";
+        }
+    }
+}
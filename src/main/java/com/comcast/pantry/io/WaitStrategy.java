@@ -0,0 +1,109 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a {@link CircularBuffer} that is full (for a writer) or empty (for a
+ * reader). {@link #BLOCKING} sleeps on the buffer's lock until another thread wakes it, which
+ * costs no CPU while idle but adds the wake-up latency of the scheduler to every hand-off. The other
+ * strategies release the buffer and poll it again, trading CPU for a shorter reaction time.
+ * <p>
+ * The polling strategies should only be used when the waiting threads have a core to themselves;
+ * on an oversubscribed machine a spinning thread takes CPU away from the thread it waits on.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Sleep in {@link java.util.concurrent.locks.Condition#await()} on the buffer's
+     * <code>notFull</code> or <code>notEmpty</code> condition until another thread reads, writes or
+     * closes the buffer. This is the original behavior of {@link CircularBuffer}.
+     */
+    BLOCKING {
+        @Override
+        void idle(int attempt) {
+            /* The thread has already waited on the buffer's lock */
+        }
+    },
+
+    /**
+     * Poll the buffer continuously. This has the lowest latency and keeps a core busy for as long
+     * as the thread waits.
+     */
+    BUSY_SPIN {
+        @Override
+        void idle(int attempt) throws InterruptedIOException {
+            checkInterrupted();
+        }
+    },
+
+    /**
+     * Poll the buffer continuously for a short while, then call {@link Thread#yield()} between
+     * polls so that other runnable threads get a chance to run.
+     */
+    SPIN_YIELD {
+        @Override
+        void idle(int attempt) throws InterruptedIOException {
+            checkInterrupted();
+            if (attempt >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+
+    /**
+     * Spin, then yield, then sleep in {@link LockSupport#parkNanos(long)} for exponentially longer
+     * intervals of up to a millisecond. This is the backoff the lock-free buffers in this package
+     * use.
+     */
+    PARK {
+        @Override
+        void idle(int attempt) throws InterruptedIOException {
+            Backoff.idle(attempt);
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * Returns <code>true</code> if waiting threads sleep on the buffer's lock rather than
+     * polling it.
+     *
+     * @return <code>true</code> for {@link #BLOCKING}
+     */
+    public boolean isBlocking() {
+        return this == BLOCKING;
+    }
+
+    /**
+     * Wait before polling the buffer again. Called without holding the buffer's lock.
+     *
+     * @param attempt
+     *            the number of consecutive polls that made no progress
+     * @throws InterruptedIOException
+     *             if the calling thread has been interrupted
+     */
+    abstract void idle(int attempt) throws InterruptedIOException;
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException();
+        }
+    }
+}
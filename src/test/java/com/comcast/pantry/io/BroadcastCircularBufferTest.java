@@ -0,0 +1,176 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.comcast.pantry.io.BroadcastCircularBuffer.Cursor;
+import com.comcast.pantry.io.BroadcastCircularBuffer.LagPolicy;
+
+public class BroadcastCircularBufferTest {
+
+    private ByteArrayCreator creator;
+
+    @BeforeClass
+    public void setup() {
+        creator = new ByteArrayCreator(8812347761l);
+    }
+
+    @Test
+    public void testEveryReaderSeesAllData() throws InterruptedException {
+        final BroadcastCircularBuffer bb = new BroadcastCircularBuffer(32, LagPolicy.THROTTLE);
+        final byte[] contents = creator.getBytes(4096);
+
+        List<CursorReader> readers = new ArrayList<CursorReader>();
+        for (int i = 0; i < 3; i++) {
+            readers.add(new CursorReader(bb.newReader(), contents.length));
+        }
+        for (CursorReader reader : readers) {
+            reader.start();
+        }
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    bb.write(contents);
+                } catch (InterruptedIOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        writer.start();
+        writer.join();
+
+        for (CursorReader reader : readers) {
+            reader.join();
+            Assert.assertEquals(reader.size, contents.length);
+            Assert.assertEquals(reader.contents, contents);
+        }
+    }
+
+    @Test
+    public void testSlowestReaderThrottlesWriter() throws InterruptedIOException {
+        BroadcastCircularBuffer bb = new BroadcastCircularBuffer(32, LagPolicy.THROTTLE, true);
+        Cursor fast = bb.newReader();
+        Cursor slow = bb.newReader();
+
+        byte[] contents = creator.getBytes(32);
+        bb.write(contents);
+
+        byte[] actual = new byte[32];
+        Assert.assertEquals(fast.read(actual), 32);
+        Assert.assertEquals(actual, contents);
+        Assert.assertEquals(fast.getLag(), 0);
+        Assert.assertEquals(slow.getLag(), 32);
+
+        /* The slow reader still holds the whole ring, so the writer must wait for it */
+        new Closer(slow, 50).start();
+        long begin = System.nanoTime();
+        bb.write(creator.getBytes(8));
+        Assert.assertTrue(System.nanoTime() - begin >= 40L * 1000 * 1000);
+        Assert.assertFalse(slow.isDropped());
+        Assert.assertEquals(bb.getReaderCount(), 1);
+    }
+
+    @Test
+    public void testLaggingReaderIsDropped() throws InterruptedIOException {
+        BroadcastCircularBuffer bb = new BroadcastCircularBuffer(32, LagPolicy.DROP, true);
+        Cursor fast = bb.newReader();
+        Cursor slow = bb.newReader();
+
+        byte[] actual = new byte[32];
+        for (int i = 0; i < 4; i++) {
+            byte[] contents = creator.getBytes(20);
+            bb.write(contents);
+            Assert.assertEquals(fast.read(actual), 20);
+        }
+
+        Assert.assertTrue(slow.isDropped());
+        Assert.assertFalse(fast.isDropped());
+        Assert.assertEquals(slow.read(actual), -1);
+        Assert.assertEquals(bb.getReaderCount(), 1);
+    }
+
+    @Test
+    public void testLateReaderOnlySeesNewData() throws InterruptedIOException {
+        BroadcastCircularBuffer bb = new BroadcastCircularBuffer(32, LagPolicy.THROTTLE, true);
+
+        bb.write(creator.getBytes(16));
+        Cursor late = bb.newReader();
+        byte[] contents = creator.getBytes(8);
+        bb.write(contents);
+
+        byte[] actual = new byte[16];
+        Assert.assertEquals(late.read(actual), 8);
+        Assert.assertEquals(Arrays.copyOf(actual, 8), contents);
+    }
+
+    @Test
+    public void testReadersDrainAfterClose() throws InterruptedIOException {
+        BroadcastCircularBuffer bb = new BroadcastCircularBuffer(32, LagPolicy.THROTTLE);
+        Cursor cursor = bb.newReader();
+
+        byte[] contents = creator.getBytes(12);
+        bb.write(contents);
+        bb.close();
+
+        byte[] actual = new byte[12];
+        Assert.assertEquals(cursor.read(actual), 12);
+        Assert.assertEquals(actual, contents);
+        Assert.assertEquals(cursor.read(actual), -1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testWriteAfterClose() throws InterruptedIOException {
+        BroadcastCircularBuffer bb = new BroadcastCircularBuffer(32, LagPolicy.THROTTLE);
+
+        bb.close();
+        bb.write(new byte[1]);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptyRing() {
+        new BroadcastCircularBuffer(0, LagPolicy.DROP);
+    }
+
+    private static class CursorReader extends Thread {
+
+        private final Cursor cursor;
+        private final byte[] contents;
+        private int size;
+
+        CursorReader(Cursor cursor, int size) {
+            this.cursor = cursor;
+            this.contents = new byte[size];
+        }
+
+        public void run() {
+            try {
+                size = cursor.read(contents);
+            } catch (InterruptedIOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ByteStoreTest {
+
+    private ByteArrayCreator creator;
+    private File dir;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        creator = new ByteArrayCreator(3456234566l);
+        dir = File.createTempFile("pantry", "stores");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @AfterClass
+    public void teardown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @DataProvider(name = "stores")
+    public Object[][] stores() throws IOException {
+        return new Object[][] {
+            { new HeapByteStore(40) },
+            { new DirectByteStore(40) },
+            { new MappedByteStore(File.createTempFile("store", ".ring", dir), 40) },
+        };
+    }
+
+    @Test(dataProvider = "stores")
+    public void testPutAndGet(ByteStore store) {
+        byte[] contents = creator.getBytes(30);
+        byte[] actual = new byte[20];
+
+        Assert.assertEquals(store.capacity(), 40);
+        store.put(10, contents, 5, 20);
+        store.get(10, actual, 0, 20);
+
+        Assert.assertEquals(actual, Arrays.copyOfRange(contents, 5, 25));
+    }
+
+    @Test(dataProvider = "stores")
+    public void testCircularBufferOverStore(ByteStore store) throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(store);
+
+        for (int i = 0; i < 5; i++) {
+            byte[] contents = creator.getBytes(35);
+            byte[] actual = new byte[contents.length];
+            cb.write(contents);
+            cb.read(actual);
+
+            Assert.assertEquals(actual, contents);
+        }
+        cb.close();
+    }
+
+    @Test
+    public void testMappedStoreSurvivesReopen() throws IOException {
+        File file = new File(dir, "crash.ring");
+        MappedByteStore store = new MappedByteStore(file, 32);
+        Assert.assertFalse(store.isRecovered());
+
+        /* Wrap around the end of the store, then leave some data unread */
+        CircularBuffer cb = new CircularBuffer(store);
+        cb.write(creator.getBytes(24));
+        cb.read(new byte[24]);
+        byte[] unread = creator.getBytes(20);
+        cb.write(unread);
+        store.close();
+
+        MappedByteStore reopened = new MappedByteStore(file, 32);
+        Assert.assertTrue(reopened.isRecovered());
+        Assert.assertEquals(reopened.getStart(), 24);
+        Assert.assertEquals(reopened.getUsed(), 20);
+        Assert.assertEquals(reopened.readUnconsumed(), unread);
+    }
+
+    @Test
+    public void testMappedStoreWithDifferentCapacityStartsEmpty() throws IOException {
+        File file = new File(dir, "resized.ring");
+        CircularBuffer cb = new CircularBuffer(new MappedByteStore(file, 32));
+        cb.write(creator.getBytes(10));
+        cb.close();
+
+        MappedByteStore reopened = new MappedByteStore(file, 64);
+        Assert.assertFalse(reopened.isRecovered());
+        Assert.assertEquals(reopened.getUsed(), 0);
+        Assert.assertEquals(reopened.readUnconsumed().length, 0);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Proves that moving data through {@link CircularBufferOutputStream} and
+ * {@link CircularBufferInputStream} does not allocate, by measuring the bytes allocated by the
+ * test thread.
+ */
+public class CircularBufferStreamAllocationTest {
+
+    private static final int ITERATIONS = 10000;
+
+    /** Leaves room for one-off allocations by the JVM itself, such as lock inflation */
+    private static final long ALLOWED_BYTES = 1024;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @BeforeClass
+    public void setup() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new SkipException("Per-thread allocation counters are not available");
+        }
+        threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Per-thread allocation counters are not supported");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @DataProvider(name = "rings")
+    public Object[][] rings() {
+        return new Object[][] {
+            { new CircularBuffer(256) },
+            { new CircularBuffer(new DirectByteStore(256)) },
+            { new SpscCircularBuffer(256) },
+            { new MultiProducerCircularBuffer(256) },
+        };
+    }
+
+    @Test(dataProvider = "rings")
+    public void testArrayRangesDoNotAllocate(ByteRing ring) throws IOException {
+        CircularBufferOutputStream out = new CircularBufferOutputStream(ring);
+        CircularBufferInputStream in = new CircularBufferInputStream(ring);
+        byte[] src = new byte[200];
+        byte[] dst = new byte[200];
+
+        /* Warm up first so class loading and compilation are not counted */
+        copyRanges(out, in, src, dst);
+
+        long before = allocatedBytes();
+        copyRanges(out, in, src, dst);
+        long allocated = allocatedBytes() - before;
+
+        Assert.assertTrue(allocated < ALLOWED_BYTES, allocated + " bytes allocated");
+    }
+
+    @Test(dataProvider = "rings")
+    public void testSingleBytesDoNotAllocate(ByteRing ring) throws IOException {
+        CircularBufferOutputStream out = new CircularBufferOutputStream(ring);
+        CircularBufferInputStream in = new CircularBufferInputStream(ring);
+
+        copySingleBytes(out, in);
+
+        long before = allocatedBytes();
+        copySingleBytes(out, in);
+        long allocated = allocatedBytes() - before;
+
+        Assert.assertTrue(allocated < ALLOWED_BYTES, allocated + " bytes allocated");
+    }
+
+    private void copyRanges(CircularBufferOutputStream out, CircularBufferInputStream in,
+            byte[] src, byte[] dst) throws IOException {
+        for (int i = 0; i < ITERATIONS; i++) {
+            out.write(src, 10, 150);
+            /* Assert.assertEquals boxes its arguments, so only call it on a mismatch */
+            int read = in.read(dst, 20, 150);
+            if (read != 150) {
+                Assert.assertEquals(read, 150);
+            }
+        }
+    }
+
+    private void copySingleBytes(CircularBufferOutputStream out, CircularBufferInputStream in)
+            throws IOException {
+        for (int i = 0; i < ITERATIONS; i++) {
+            out.write(i);
+            int read = in.read();
+            if (read != (i & 0xFF)) {
+                Assert.assertEquals(read, i & 0xFF);
+            }
+        }
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
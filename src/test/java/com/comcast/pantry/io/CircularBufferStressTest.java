@@ -0,0 +1,210 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Several readers and writers hammering one {@link CircularBuffer}. Every writer writes bytes
+ * holding its own id, so the readers' tallies show whether any byte was lost or duplicated, and
+ * every test has a time limit far below the buffer's ten minute write timeout, so a lost wake-up
+ * fails the test instead of stalling it.
+ */
+public class CircularBufferStressTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int BYTES_PER_WRITER = 256 * 1024;
+
+    @DataProvider(name = "fairness")
+    public Object[][] fairness() {
+        return new Object[][] { { false }, { true } };
+    }
+
+    @Test(dataProvider = "fairness", timeOut = 60000)
+    public void testManyReadersAndWriters(boolean fair) throws InterruptedException {
+        final CircularBuffer cb = new CircularBuffer(256, false, WaitStrategy.BLOCKING, fair);
+        Assert.assertEquals(cb.isFair(), fair);
+
+        List<StressWriter> writers = new ArrayList<StressWriter>();
+        for (int i = 0; i < WRITERS; i++) {
+            writers.add(new StressWriter(cb, (byte) i, 1 + 17 * i));
+        }
+        List<StressReader> readers = new ArrayList<StressReader>();
+        for (int i = 0; i < READERS; i++) {
+            readers.add(new StressReader(cb, 13 + 29 * i));
+        }
+
+        for (StressReader reader : readers) {
+            reader.start();
+        }
+        for (StressWriter writer : writers) {
+            writer.start();
+        }
+        for (StressWriter writer : writers) {
+            writer.join();
+            Assert.assertNull(writer.failure);
+        }
+
+        /* Let the readers take everything before closing, since close drops unread data */
+        while (cb.getUsed() > 0) {
+            Thread.sleep(1);
+        }
+        cb.close();
+
+        long[] totals = new long[WRITERS];
+        for (StressReader reader : readers) {
+            reader.join();
+            Assert.assertNull(reader.failure);
+            for (int i = 0; i < WRITERS; i++) {
+                totals[i] += reader.tally[i];
+            }
+        }
+
+        long slowest = 0;
+        for (int i = 0; i < WRITERS; i++) {
+            Assert.assertEquals(totals[i], BYTES_PER_WRITER);
+            slowest = Math.max(slowest, writers.get(i).maxWriteNanos);
+        }
+        Assert.assertTrue(slowest < TimeUnit.SECONDS.toNanos(10), "write took " + slowest + "ns");
+        Assert.assertEquals(cb.getBytesIn(), (long) WRITERS * BYTES_PER_WRITER);
+        Assert.assertEquals(cb.getBytesOut(), (long) WRITERS * BYTES_PER_WRITER);
+    }
+
+    @Test(timeOut = 10000)
+    public void testOneWriteWakesEveryReaderItFeeds() throws InterruptedException,
+            InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(64);
+
+        List<Reader> readers = new ArrayList<Reader>();
+        for (int i = 0; i < 3; i++) {
+            readers.add(new Reader(cb, 16));
+        }
+        for (Reader reader : readers) {
+            reader.start();
+        }
+        for (Reader reader : readers) {
+            awaitBlocked(reader);
+        }
+
+        cb.write(new byte[48]);
+        for (Reader reader : readers) {
+            reader.join();
+            Assert.assertEquals(reader.getSize(), 16);
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testOneReadWakesEveryWriterItMakesRoomFor() throws InterruptedException,
+            InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(48);
+        cb.write(new byte[48]);
+
+        List<Writer> writers = new ArrayList<Writer>();
+        for (int i = 0; i < 3; i++) {
+            writers.add(new Writer(cb, new byte[16]));
+        }
+        for (Writer writer : writers) {
+            writer.start();
+        }
+        for (Writer writer : writers) {
+            awaitBlocked(writer);
+        }
+
+        Assert.assertEquals(cb.read(new byte[48]), 48);
+        for (Writer writer : writers) {
+            writer.join();
+        }
+        Assert.assertEquals(cb.getUsed(), 48);
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        while ((thread.getState() != Thread.State.WAITING)
+                && (thread.getState() != Thread.State.TIMED_WAITING)) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static class StressWriter extends Thread {
+
+        private final CircularBuffer cb;
+        private final byte id;
+        private final int chunkSize;
+        private long maxWriteNanos;
+        private Throwable failure;
+
+        StressWriter(CircularBuffer cb, byte id, int chunkSize) {
+            this.cb = cb;
+            this.id = id;
+            this.chunkSize = chunkSize;
+        }
+
+        public void run() {
+            byte[] chunk = new byte[chunkSize];
+            Arrays.fill(chunk, id);
+
+            try {
+                int remaining = BYTES_PER_WRITER;
+                while (remaining > 0) {
+                    int n = Math.min(remaining, chunkSize);
+                    long begin = System.nanoTime();
+                    cb.write(chunk, 0, n);
+                    maxWriteNanos = Math.max(maxWriteNanos, System.nanoTime() - begin);
+                    remaining -= n;
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+
+    private static class StressReader extends Thread {
+
+        private final CircularBuffer cb;
+        private final int readSize;
+        private final long[] tally = new long[WRITERS];
+        private Throwable failure;
+
+        StressReader(CircularBuffer cb, int readSize) {
+            this.cb = cb;
+            this.readSize = readSize;
+        }
+
+        public void run() {
+            byte[] b = new byte[readSize];
+
+            try {
+                int n;
+                while ((n = cb.read(b)) != -1) {
+                    for (int i = 0; i < n; i++) {
+                        tally[b[i]]++;
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+}
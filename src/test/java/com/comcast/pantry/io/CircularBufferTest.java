@@ -18,14 +18,30 @@ package com.comcast.pantry.io;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 public class CircularBufferTest {
@@ -291,6 +307,577 @@ public class CircularBufferTest {
         Assert.assertEquals(truncated, contents);
     }
 
+    @Test
+    public void testByteBuffers() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(new DirectByteStore(40));
+
+        for (int i = 0; i < 5; i++) {
+            byte[] contents = creator.getBytes(35);
+            ByteBuffer src = ByteBuffer.allocateDirect(35);
+            src.put(contents).flip();
+            ByteBuffer dst = ByteBuffer.allocate(35);
+
+            Assert.assertEquals(cb.write(src), 35);
+            Assert.assertFalse(src.hasRemaining());
+            Assert.assertEquals(cb.read(dst), 35);
+
+            Assert.assertEquals(dst.array(), contents);
+        }
+
+        cb.close();
+        Assert.assertFalse(cb.isOpen());
+        Assert.assertEquals(cb.read(ByteBuffer.allocate(8)), -1);
+    }
+
+    @Test
+    public void testTransferWrappedRegions() throws IOException {
+        CircularBuffer cb = new CircularBuffer(40);
+        Pipe in = Pipe.open();
+        Pipe out = Pipe.open();
+
+        /* Move the start to the middle so the free and used space both wrap */
+        cb.write(creator.getBytes(30));
+        cb.read(new byte[30]);
+
+        byte[] contents = creator.getBytes(35);
+        in.sink().write(ByteBuffer.wrap(contents));
+        Assert.assertEquals(cb.transferFrom(in.source()), 35);
+        Assert.assertTrue(cb.isWrapped());
+
+        Assert.assertEquals(cb.transferTo(out.sink()), 35);
+
+        ByteBuffer actual = ByteBuffer.allocate(35);
+        while (actual.hasRemaining()) {
+            out.source().read(actual);
+        }
+        Assert.assertEquals(actual.array(), contents);
+    }
+
+    @Test
+    public void testTransferToPlainChannel() throws IOException {
+        CircularBuffer cb = new CircularBuffer(16);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        cb.write(creator.getBytes(10));
+        cb.read(new byte[10]);
+
+        /* Without a gathering channel only the first region is written */
+        byte[] contents = creator.getBytes(12);
+        cb.write(contents);
+        Assert.assertEquals(cb.transferTo(Channels.newChannel(out)), 6);
+        Assert.assertEquals(cb.transferTo(Channels.newChannel(out)), 6);
+        Assert.assertEquals(out.toByteArray(), contents);
+    }
+
+    @Test
+    public void testTransferFromEndOfStream() throws IOException {
+        CircularBuffer cb = new CircularBuffer(16);
+        Pipe in = Pipe.open();
+        in.sink().close();
+
+        Assert.assertEquals(cb.transferFrom(in.source()), -1);
+    }
+
+    @Test
+    public void testReadersDrainWhileTransferBlocks() throws Exception {
+        final CircularBuffer cb = new CircularBuffer(16);
+        final Pipe in = Pipe.open();
+        byte[] contents = creator.getBytes(8);
+        cb.write(contents);
+
+        /* The transfer blocks on an empty pipe, but must not block the reader */
+        Thread transfer = new Thread() {
+            public void run() {
+                try {
+                    cb.transferFrom(in.source());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        transfer.start();
+        Thread.sleep(100);
+
+        byte[] actual = new byte[8];
+        Assert.assertEquals(cb.read(actual), 8);
+        Assert.assertEquals(actual, contents);
+
+        byte[] more = creator.getBytes(4);
+        in.sink().write(ByteBuffer.wrap(more));
+        transfer.join();
+
+        byte[] transferred = new byte[4];
+        Assert.assertEquals(cb.read(transferred), 4);
+        Assert.assertEquals(transferred, more);
+    }
+
+    @DataProvider(name = "waitStrategies")
+    public Object[][] waitStrategies() {
+        WaitStrategy[] strategies = WaitStrategy.values();
+        Object[][] params = new Object[strategies.length][];
+        for (int i = 0; i < strategies.length; i++) {
+            params[i] = new Object[] { strategies[i] };
+        }
+        return params;
+    }
+
+    @Test(dataProvider = "waitStrategies")
+    public void testLargeDataWithWaitStrategy(WaitStrategy strategy) throws InterruptedException {
+        CircularBuffer cb = new CircularBuffer(32, false, strategy);
+        Assert.assertEquals(cb.getWaitStrategy(), strategy);
+
+        byte[] contents = creator.getBytes(4096);
+        Writer writer = new Writer(cb, contents);
+        Reader reader = new Reader(cb, 4096);
+
+        writer.start();
+        reader.start();
+
+        writer.join();
+        reader.join();
+
+        Assert.assertEquals(reader.getSize(), 4096);
+        Assert.assertEquals(reader.getContents(), contents);
+    }
+
+    @Test(dataProvider = "waitStrategies")
+    public void testClosingWhileWaitingWithWaitStrategy(WaitStrategy strategy)
+            throws InterruptedException {
+        CircularBuffer cb = new CircularBuffer(32, false, strategy);
+
+        Closer closer = new Closer(cb, 100);
+        Reader reader = new Reader(cb, 32);
+
+        reader.start();
+        closer.start();
+
+        reader.join();
+        closer.join();
+
+        Assert.assertEquals(reader.getSize(), -1);
+    }
+
+    @Test(dataProvider = "waitStrategies", expectedExceptions = IllegalStateException.class)
+    public void testClosingWhileWritingWithWaitStrategy(WaitStrategy strategy)
+            throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32, false, strategy);
+
+        new Closer(cb, 50).start();
+        cb.write(creator.getBytes(50));
+    }
+
+    @Test(dataProvider = "waitStrategies")
+    public void testTransferWithWaitStrategy(WaitStrategy strategy) throws Exception {
+        final CircularBuffer cb = new CircularBuffer(16, false, strategy);
+        final byte[] contents = creator.getBytes(200);
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    ReadableByteChannel src = Channels.newChannel(
+                            new ByteArrayInputStream(contents));
+                    while (cb.transferFrom(src) != -1) {
+                        // keep filling
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        writer.start();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (out.size() < contents.length) {
+            cb.transferTo(target);
+        }
+        writer.join();
+
+        Assert.assertEquals(out.toByteArray(), contents);
+    }
+
+    @Test
+    public void testTryWriteAndTryRead() {
+        CircularBuffer cb = new CircularBuffer(32);
+        byte[] contents = creator.getBytes(40);
+
+        Assert.assertEquals(cb.tryRead(new byte[8]), 0);
+        Assert.assertEquals(cb.tryWrite(contents), 32);
+        Assert.assertEquals(cb.tryWrite(contents, 32, 8), 0);
+
+        byte[] actual = new byte[40];
+        Assert.assertEquals(cb.tryRead(actual, 0, 20), 20);
+        Assert.assertEquals(cb.tryWrite(contents, 32, 8), 8);
+        Assert.assertEquals(cb.tryRead(actual, 20, 20), 20);
+        Assert.assertEquals(actual, contents);
+
+        cb.close();
+        Assert.assertEquals(cb.tryRead(actual), -1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testTryWriteAfterClosing() {
+        CircularBuffer cb = new CircularBuffer(32);
+
+        cb.close();
+        cb.tryWrite(creator.getBytes(8));
+    }
+
+    @Test(dataProvider = "waitStrategies")
+    public void testTimedWriteReportsBytesWritten(WaitStrategy strategy)
+            throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32, false, strategy);
+
+        try {
+            cb.write(creator.getBytes(50), 50, TimeUnit.MILLISECONDS);
+            Assert.fail("write should have timed out");
+        } catch (CircularBufferTimeoutException e) {
+            Assert.assertEquals(e.bytesTransferred, 32);
+        }
+    }
+
+    @Test(dataProvider = "waitStrategies")
+    public void testTimedReadReportsBytesRead(WaitStrategy strategy)
+            throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32, false, strategy);
+        byte[] contents = creator.getBytes(8);
+        cb.write(contents);
+
+        byte[] actual = new byte[16];
+        try {
+            cb.read(actual, 50, TimeUnit.MILLISECONDS);
+            Assert.fail("read should have timed out");
+        } catch (CircularBufferTimeoutException e) {
+            Assert.assertEquals(e.bytesTransferred, 8);
+            Assert.assertEquals(Arrays.copyOf(actual, 8), contents);
+        }
+    }
+
+    @Test
+    public void testTimedTransferCompletes() throws InterruptedException {
+        final CircularBuffer cb = new CircularBuffer(32);
+        final byte[] contents = creator.getBytes(128);
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    cb.write(contents, 0, contents.length, 10, TimeUnit.SECONDS);
+                } catch (InterruptedIOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        writer.start();
+
+        byte[] actual = new byte[128];
+        try {
+            Assert.assertEquals(cb.read(actual, 10, TimeUnit.SECONDS), 128);
+        } catch (InterruptedIOException e) {
+            Assert.fail("read timed out", e);
+        }
+        writer.join();
+
+        Assert.assertEquals(actual, contents);
+    }
+
+    @Test
+    public void testTimedReadAfterClosing() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+
+        cb.close();
+        Assert.assertEquals(cb.read(new byte[8], 1, TimeUnit.SECONDS), -1);
+    }
+
+    @Test
+    public void testOverwriteDiscardsOldestData() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+        cb.setOverwrite(true);
+        Assert.assertTrue(cb.isOverwrite());
+
+        byte[] first = creator.getBytes(20);
+        byte[] second = creator.getBytes(20);
+        cb.write(first);
+        cb.write(second);
+
+        Assert.assertEquals(cb.getDroppedBytes(), 8);
+        Assert.assertEquals(cb.getUsed(), 32);
+
+        byte[] actual = new byte[32];
+        Assert.assertEquals(cb.read(actual), 32);
+        Assert.assertEquals(actual, concat(Arrays.copyOfRange(first, 8, 20), second));
+    }
+
+    @Test
+    public void testOverwriteWithDataLargerThanBuffer() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+        cb.setOverwrite(true);
+
+        cb.write(creator.getBytes(10));
+        byte[] contents = creator.getBytes(50);
+        cb.write(ByteBuffer.wrap(contents));
+
+        Assert.assertEquals(cb.getDroppedBytes(), 28);
+        byte[] actual = new byte[32];
+        Assert.assertEquals(cb.read(actual), 32);
+        Assert.assertEquals(actual, Arrays.copyOfRange(contents, 18, 50));
+    }
+
+    @Test(dataProvider = "waitStrategies")
+    public void testOverwriteNeverWaits(WaitStrategy strategy) throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32, false, strategy);
+        cb.setOverwrite(true);
+
+        for (int i = 0; i < 100; i++) {
+            cb.write(creator.getBytes(16), 1, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(cb.tryWrite(creator.getBytes(16)), 16);
+
+        Assert.assertEquals(cb.getDroppedBytes(), 101 * 16 - 32);
+        Assert.assertEquals(cb.getUsed(), 32);
+    }
+
+    @Test
+    public void testDrainHandsOutWrappedRegions() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+        cb.write(creator.getBytes(24));
+        cb.read(new byte[24]);
+
+        /* 20 bytes starting at index 24, so they wrap after 8 */
+        byte[] contents = creator.getBytes(20);
+        cb.write(contents);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final List<Integer> chunks = new ArrayList<Integer>();
+        int n = cb.drain(new ByteChunkHandler() {
+            public void onChunk(ByteBuffer chunk) {
+                Assert.assertTrue(chunk.isReadOnly());
+                chunks.add(chunk.remaining());
+                while (chunk.hasRemaining()) {
+                    out.write(chunk.get());
+                }
+            }
+        }, 100);
+
+        Assert.assertEquals(n, 20);
+        Assert.assertEquals(chunks, Arrays.asList(8, 12));
+        Assert.assertEquals(out.toByteArray(), contents);
+        Assert.assertEquals(cb.getUsed(), 0);
+    }
+
+    @Test
+    public void testDrainKeepsWhatIsNotConsumed() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+        byte[] contents = creator.getBytes(20);
+        cb.write(contents);
+
+        /* Consume whole 6 byte "messages" only, leaving the partial one */
+        ByteChunkHandler sixes = new ByteChunkHandler() {
+            public void onChunk(ByteBuffer chunk) {
+                while (chunk.remaining() >= 6) {
+                    chunk.position(chunk.position() + 6);
+                }
+            }
+        };
+        Assert.assertEquals(cb.drain(sixes, 100), 18);
+        Assert.assertEquals(cb.drain(sixes, 1), 0);
+
+        byte[] rest = new byte[2];
+        Assert.assertEquals(cb.read(rest), 2);
+        Assert.assertEquals(rest, Arrays.copyOfRange(contents, 18, 20));
+
+        cb.close();
+        Assert.assertEquals(cb.drain(sixes, 100), -1);
+    }
+
+    @Test
+    public void testClaimAndCommit() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+        byte[] contents = creator.getBytes(12);
+
+        ByteBuffer claim = cb.claim(16);
+        Assert.assertEquals(claim.remaining(), 16);
+        claim.put(contents);
+
+        /* Nothing is readable until the claim is committed, and other writers must wait */
+        Assert.assertEquals(cb.tryRead(new byte[12]), 0);
+        Assert.assertEquals(cb.tryWrite(new byte[4]), 0);
+
+        cb.commit(12);
+        byte[] actual = new byte[12];
+        Assert.assertEquals(cb.read(actual), 12);
+        Assert.assertEquals(actual, contents);
+    }
+
+    @Test
+    public void testClaimSplitsAtWrap() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+        cb.write(creator.getBytes(24));
+        cb.read(new byte[20]);
+
+        /* 4 bytes unread at 20..23, so the free space is 24..31 and then 0..19 */
+        byte[] contents = creator.getBytes(20);
+        ByteBuffer first = cb.claim(20);
+        Assert.assertEquals(first.remaining(), 8);
+        first.put(contents, 0, 8);
+        cb.commit(8);
+
+        ByteBuffer second = cb.claim(12);
+        Assert.assertEquals(second.remaining(), 12);
+        second.put(contents, 8, 12);
+        cb.commit(12);
+
+        byte[] actual = new byte[24];
+        Assert.assertEquals(cb.read(actual), 24);
+        Assert.assertEquals(Arrays.copyOfRange(actual, 4, 24), contents);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testCommitWithoutClaim() {
+        new CircularBuffer(32).commit(1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testClaimTwice() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+
+        cb.claim(4);
+        cb.claim(4);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCommitMoreThanClaimed() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32);
+
+        cb.claim(4);
+        cb.commit(5);
+    }
+
+    @Test
+    public void testElasticBufferGrowsInsteadOfWaiting() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(new ElasticPolicy(16, 256, 75, 1, TimeUnit.HOURS),
+                false);
+        Assert.assertEquals(cb.getCapacity(), 16);
+
+        /* Wrap the data first so growing has to linearize it */
+        cb.write(creator.getBytes(10));
+        cb.read(new byte[10]);
+        byte[] contents = creator.getBytes(100);
+        cb.write(contents);
+
+        Assert.assertEquals(cb.getCapacity(), 256);
+        Assert.assertEquals(cb.getResizeCount(), 1);
+        Assert.assertEquals(cb.getPeakUsed(), 100);
+
+        byte[] actual = new byte[100];
+        Assert.assertEquals(cb.read(actual), 100);
+        Assert.assertEquals(actual, contents);
+
+        /* Not idle for long enough to shrink */
+        Assert.assertEquals(cb.getCapacity(), 256);
+    }
+
+    @Test
+    public void testElasticBufferStopsAtMaximum() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(new ElasticPolicy(16, 40, 75, 1, TimeUnit.HOURS),
+                false);
+
+        Assert.assertEquals(cb.tryWrite(creator.getBytes(50)), 40);
+        Assert.assertEquals(cb.getCapacity(), 40);
+    }
+
+    @Test
+    public void testElasticBufferShrinksWhenIdle() throws InterruptedException,
+            InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(new ElasticPolicy(16, 256, 75, 20,
+                TimeUnit.MILLISECONDS), false);
+
+        cb.write(creator.getBytes(64));
+        cb.read(new byte[60]);
+        Assert.assertEquals(cb.getCapacity(), 128);
+
+        Thread.sleep(50);
+        byte[] contents = creator.getBytes(4);
+        cb.write(contents);
+        byte[] actual = new byte[8];
+        cb.read(actual);
+
+        Assert.assertEquals(cb.getCapacity(), 16);
+        Assert.assertEquals(cb.getResizeCount(), 2);
+        Assert.assertEquals(cb.getPeakUsed(), 64);
+        Assert.assertEquals(Arrays.copyOfRange(actual, 4, 8), contents);
+    }
+
+    @Test
+    public void testStatisticsAddUp() throws InterruptedIOException {
+        CircularBuffer cb = new CircularBuffer(32, true);
+        cb.setOverwrite(true);
+
+        cb.write(creator.getBytes(20));
+        cb.read(new byte[8]);
+        cb.write(creator.getBytes(24));
+
+        Assert.assertEquals(cb.getBytesIn(), 44);
+        Assert.assertEquals(cb.getBytesOut(), 8);
+        Assert.assertEquals(cb.getUsed(), 32);
+        Assert.assertEquals(cb.getDroppedBytes(), 4);
+        Assert.assertEquals(cb.getPeakUsed(), 32);
+        Assert.assertEquals(cb.getBytesIn(),
+                cb.getBytesOut() + cb.getUsed() + cb.getDroppedBytes());
+    }
+
+    @Test
+    public void testStallsAreCounted() throws InterruptedException, IOException {
+        CircularBuffer cb = new CircularBuffer(32);
+
+        /* The reader blocks on the empty buffer until the writer comes along */
+        Reader reader = new Reader(cb, 64);
+        reader.start();
+        Thread.sleep(50);
+
+        /* Then the writer blocks on the full buffer until the reader catches up */
+        byte[] contents = creator.getBytes(64);
+        cb.write(contents);
+        reader.join();
+
+        Assert.assertEquals(reader.getContents(), contents);
+        Assert.assertTrue(cb.getConsumerBlockCount() > 0);
+        Assert.assertTrue(cb.getConsumerBlockedNanos() >= TimeUnit.MILLISECONDS.toNanos(40));
+        Assert.assertEquals(cb.getProducerBlockCount() > 0, cb.getProducerBlockedNanos() > 0);
+        Assert.assertEquals(cb.getBytesOut(), 64);
+    }
+
+    @Test
+    public void testRegisterWithJmx() throws InterruptedIOException, JMException {
+        CircularBuffer cb = new CircularBuffer(128);
+        ObjectName name = cb.register("testRegisterWithJmx");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        cb.write(creator.getBytes(100));
+        cb.read(new byte[60]);
+
+        Assert.assertEquals(server.getAttribute(name, "BytesIn"), 100L);
+        Assert.assertEquals(server.getAttribute(name, "BytesOut"), 60L);
+        Assert.assertEquals(server.getAttribute(name, "Used"), 40);
+        Assert.assertEquals(server.getAttribute(name, "PeakUsed"), 100);
+        Assert.assertEquals(server.getAttribute(name, "Open"), true);
+
+        cb.close();
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    @Test(expectedExceptions = JMException.class)
+    public void testRegisterSameNameTwice() throws JMException {
+        CircularBuffer first = new CircularBuffer(16);
+        CircularBuffer second = new CircularBuffer(16);
+
+        first.register("testRegisterSameNameTwice");
+        try {
+            second.register("testRegisterSameNameTwice");
+        } finally {
+            first.close();
+        }
+    }
+
     private static byte[] concat(byte[]... arrays) {
         int size = 0;
         for (byte[] array : arrays) {
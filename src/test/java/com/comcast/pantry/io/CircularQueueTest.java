@@ -16,6 +16,12 @@
 
 package com.comcast.pantry.io;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -53,7 +59,7 @@ public class CircularQueueTest {
      */
     @Test(dataProvider = "inRangeData")
     public void testInRange01(int index, boolean result, boolean before) throws Exception {
-        CircularQueue q = new CircularQueue(10);
+        CircularQueue<String> q = new CircularQueue<String>(10);
         q.init();
 
         prepare(q, 10);
@@ -68,7 +74,7 @@ public class CircularQueueTest {
         }
     }
 
-    private CircularQueue prepare(CircularQueue q, int len) {
+    private CircularQueue<String> prepare(CircularQueue<String> q, int len) {
         for (int i = 0; i < len; i++) {
             q.add(Integer.toString(i));
         }
@@ -82,7 +88,7 @@ public class CircularQueueTest {
     @Test
     public void testInRange() {
 
-        CircularQueue q = new CircularQueue(10);
+        CircularQueue<String> q = new CircularQueue<String>(10);
         // no data has been inserted
         Assert.assertFalse(q.inRange(10));
         q.add("0");
@@ -129,7 +135,7 @@ public class CircularQueueTest {
 
     @Test
     public void testIsFull() {
-        CircularQueue q = new CircularQueue(2);
+        CircularQueue<String> q = new CircularQueue<String>(2);
         q.add("0");
         Assert.assertFalse(q.isFull());
         q.add("1");
@@ -140,7 +146,7 @@ public class CircularQueueTest {
 
     @Test
     public void testIsEmpty() {
-        CircularQueue q = new CircularQueue(2);
+        CircularQueue<String> q = new CircularQueue<String>(2);
         Assert.assertTrue((q.isEmpty()));
         q.add("1");
         Assert.assertFalse(q.isEmpty());
@@ -153,7 +159,7 @@ public class CircularQueueTest {
     @Test
     public void testGet() {
         int check = 0;
-        CircularQueue q = new CircularQueue(10);
+        CircularQueue<String> q = new CircularQueue<String>(10);
         // no data has been inserted
         try {
             q.get(0);
@@ -219,7 +225,7 @@ public class CircularQueueTest {
 
     @Test(dataProvider = "addData")
     public void testAdd( String[] value, int result) {
-        CircularQueue q = new CircularQueue(5);
+        CircularQueue<String> q = new CircularQueue<String>(5);
         q.init();
 
         for(String val : value) {
@@ -231,7 +237,7 @@ public class CircularQueueTest {
     }
 
     @Test void testNullAdd(){
-        CircularQueue q = new CircularQueue();
+        CircularQueue<String> q = new CircularQueue<String>();
         Assert.assertFalse(q.add(null));
     }
 
@@ -250,7 +256,7 @@ public class CircularQueueTest {
     }
     @Test(dataProvider = "addData00")
     public void testAddandDelete( String[] value, int size, int endQ, int startQ) {
-        CircularQueue q = new CircularQueue(5);
+        CircularQueue<String> q = new CircularQueue<String>(5);
         for(String val : value) {
             q.add(val);
             Assert.assertEquals((int)Integer.valueOf(val), q.getDataEndIndex());
@@ -262,7 +268,7 @@ public class CircularQueueTest {
 
     @Test
     public void testDeleteQEmpty() {
-        CircularQueue q = new CircularQueue();
+        CircularQueue<String> q = new CircularQueue<String>();
         Assert.assertFalse(q.delete());
     }
 
@@ -281,7 +287,7 @@ public class CircularQueueTest {
 
     @Test (dataProvider ="deleteData01")
     public void testDelete(String[]values, int size, int currentStart) {
-        CircularQueue q = new CircularQueue(5);
+        CircularQueue<String> q = new CircularQueue<String>(5);
         for(String val : values) {
             q.add(val);
         }
@@ -297,7 +303,7 @@ public class CircularQueueTest {
 
     @Test
     public void testisIndexInDataRange(){
-        CircularQueue q = new CircularQueue(4);
+        CircularQueue<String> q = new CircularQueue<String>(4);
         q.add("p");
         Assert.assertFalse(q.isIndexInDataRange(1));
         Assert.assertFalse(q.isIndexInDataRange(2));
@@ -322,7 +328,7 @@ public class CircularQueueTest {
 
     @Test (dataProvider ="relativeIndex")
     public void testgetRelativeIndex(String []values, int value, int expected ){
-        CircularQueue q = new CircularQueue(3);
+        CircularQueue<String> q = new CircularQueue<String>(3);
         for(String val :values){
             q.add(val);
         }
@@ -351,7 +357,7 @@ public class CircularQueueTest {
     @Test (dataProvider ="dataLimits")
     public void testDataLimits(String[] values){
         int size = 5;
-        CircularQueue q = new CircularQueue(size);
+        CircularQueue<String> q = new CircularQueue<String>(size);
         for(String val: values) {
             q.add(val);
             Assert.assertTrue((int)Integer.valueOf(val) == q.getDataEndIndex() );
@@ -366,11 +372,108 @@ public class CircularQueueTest {
 
     @Test
     public void testInit() {
-        CircularQueue q = new CircularQueue();
+        CircularQueue<String> q = new CircularQueue<String>();
         q.init();
         Assert.assertTrue(q.getDataStartIndex() == 0);
         Assert.assertTrue(q.getDataEndIndex() == -1);
         Assert.assertTrue(q.getQueueStartIndex() == 0);
         Assert.assertTrue(q.getQueueEndIndex()== -1);
     }
+
+    @Test
+    public void testStorageRoundedUpToPowerOfTwo() {
+        Assert.assertEquals(new CircularQueue<String>(1).getStorageSize(), 1);
+        Assert.assertEquals(new CircularQueue<String>(8).getStorageSize(), 8);
+        Assert.assertEquals(new CircularQueue<String>().getStorageSize(), 32768);
+
+        /* The queue still holds only as many values as it was asked to */
+        CircularQueue<String> q = new CircularQueue<String>(5);
+        Assert.assertEquals(q.getStorageSize(), 8);
+        prepare(q, 13);
+        Assert.assertTrue(q.isFull());
+        Assert.assertEquals(q.getDataStartIndex(), 8);
+        Assert.assertEquals(q.get(8), "8");
+        Assert.assertEquals(q.get(12), "12");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new CircularQueue<String>(0);
+    }
+
+    @Test
+    public void testGenericValues() {
+        CircularQueue<Integer> q = new CircularQueue<Integer>(3);
+        for (int i = 0; i < 5; i++) {
+            q.add(i * 10);
+        }
+        int value = q.get(4);
+        Assert.assertEquals(value, 40);
+    }
+
+    @Test
+    public void testAddAll() {
+        CircularQueue<String> q = new CircularQueue<String>(4);
+        Assert.assertTrue(q.addAll(Arrays.asList("a", null, "b", "c", "d", "e")));
+        Assert.assertFalse(q.addAll(new ArrayList<String>()));
+
+        Assert.assertEquals(q.getDataStartIndex(), 1);
+        Assert.assertEquals(q.getDataEndIndex(), 4);
+        Assert.assertEquals(q.get(1), "b");
+        Assert.assertEquals(q.get(4), "e");
+    }
+
+    @Test
+    public void testCopyRangeAcrossTheWrap() {
+        CircularQueue<String> q = new CircularQueue<String>(5);
+        prepare(q, 8);
+
+        String[] dest = new String[5];
+        Assert.assertEquals(q.copyRange(q.getDataStartIndex(), q.getDataEndIndex() + 1, dest), 5);
+        Assert.assertEquals(dest, new String[] { "3", "4", "5", "6", "7" });
+
+        dest = new String[3];
+        Assert.assertEquals(q.copyRange(4, 6, dest), 2);
+        Assert.assertEquals(dest, new String[] { "4", "5", null });
+        Assert.assertEquals(q.copyRange(6, 6, dest), 0);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testCopyRangeOfOverwrittenValues() {
+        CircularQueue<String> q = new CircularQueue<String>(5);
+        prepare(q, 8);
+        q.copyRange(2, 5, new String[3]);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testCopyRangeIntoShortArray() {
+        CircularQueue<String> q = new CircularQueue<String>(5);
+        prepare(q, 5);
+        q.copyRange(0, 5, new String[4]);
+    }
+
+    @Test
+    public void testIteratorOldestFirst() {
+        CircularQueue<String> q = new CircularQueue<String>(4);
+        prepare(q, 6);
+        q.delete();
+
+        List<String> values = new ArrayList<String>();
+        for (String value : q) {
+            values.add(value);
+        }
+        Assert.assertEquals(values, Arrays.asList("3", "4", "5"));
+        Assert.assertFalse(new CircularQueue<String>(4).iterator().hasNext());
+    }
+
+    @Test(expectedExceptions = ConcurrentModificationException.class)
+    public void testIteratorFailsFast() {
+        CircularQueue<String> q = new CircularQueue<String>(4);
+        prepare(q, 3);
+
+        Iterator<String> it = q.iterator();
+        it.next();
+        q.add("3");
+        it.next();
+    }
 }
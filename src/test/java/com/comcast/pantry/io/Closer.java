@@ -16,13 +16,16 @@
 
 package com.comcast.pantry.io;
 
+import java.io.Closeable;
+import java.io.IOException;
+
 public class Closer extends Thread {
 
-    private CircularBuffer cb;
+    private Closeable cb;
     private Thread next;
     private long delay;
 
-    public Closer(CircularBuffer cb, long delay) {
+    public Closer(Closeable cb, long delay) {
         this.cb = cb;
         this.next = null;
         this.delay = delay;
@@ -39,7 +42,11 @@ public class Closer extends Thread {
             // ignored
         }
 
-        cb.close();
+        try {
+            cb.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
         if (null != next) {
             next.start();
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CompactCircularQueueTest {
+
+    @Test
+    public void testAddAndGet() {
+        CompactCircularQueue queue = new CompactCircularQueue(8);
+        Assert.assertFalse(queue.add(null));
+
+        queue.add("first");
+        queue.add("");
+        queue.add("caf\u00e9 \u2603");
+
+        Assert.assertEquals(queue.getDataStartIndex(), 0);
+        Assert.assertEquals(queue.getDataEndIndex(), 2);
+        Assert.assertEquals(queue.get(0), "first");
+        Assert.assertEquals(queue.get(1), "");
+        Assert.assertEquals(queue.get(2), "caf\u00e9 \u2603");
+    }
+
+    @Test
+    public void testOldestValuesDeletedWhenFull() {
+        CompactCircularQueue queue = new CompactCircularQueue(5, 1024);
+        for (int i = 0; i < 12; i++) {
+            queue.add("line " + i);
+        }
+
+        Assert.assertTrue(queue.isFull());
+        Assert.assertEquals(queue.getDataStartIndex(), 7);
+        for (int i = 7; i < 12; i++) {
+            Assert.assertEquals(queue.get(i), "line " + i);
+        }
+    }
+
+    @Test
+    public void testOldestValuesMakeRoomInArena() {
+        CompactCircularQueue queue = new CompactCircularQueue(100, 30);
+        for (int i = 0; i < 50; i++) {
+            queue.add(value(i));
+
+            Assert.assertEquals(queue.getDataEndIndex(), i);
+            Assert.assertTrue(queue.getUsedBytes() <= 30);
+            for (long j = queue.getDataStartIndex(); j <= i; j++) {
+                Assert.assertEquals(queue.get(j), value(j));
+            }
+        }
+        Assert.assertTrue(queue.getDataStartIndex() > 0);
+    }
+
+    @Test
+    public void testEmptyValuesTakeNoRoom() {
+        CompactCircularQueue queue = new CompactCircularQueue(8, 10);
+        queue.add("");
+        queue.add("abc");
+        queue.add("");
+        queue.add("defghij");
+
+        Assert.assertEquals(queue.getDataStartIndex(), 0);
+        Assert.assertEquals(queue.get(0), "");
+        Assert.assertEquals(queue.get(3), "defghij");
+
+        /* Wraps to the front and needs the bytes of "abc", but not the empty value after them */
+        queue.add("k");
+        Assert.assertEquals(queue.getDataStartIndex(), 2);
+        Assert.assertEquals(queue.get(2), "");
+        Assert.assertEquals(queue.get(3), "defghij");
+        Assert.assertEquals(queue.get(4), "k");
+    }
+
+    @Test
+    public void testArenaGrowsAsNeeded() {
+        CompactCircularQueue queue = new CompactCircularQueue(2000, 1 << 20);
+        Assert.assertEquals(queue.getArenaSize(), CompactCircularQueue.INITIAL_ARENA_SIZE);
+
+        for (int i = 0; i < 5000; i++) {
+            queue.add(line(i));
+        }
+        Assert.assertTrue(queue.getArenaSize() > CompactCircularQueue.INITIAL_ARENA_SIZE);
+        Assert.assertTrue(queue.getArenaSize() < queue.getCapacity());
+        Assert.assertEquals(queue.getDataStartIndex(), 3000);
+        for (long i = 3000; i < 5000; i++) {
+            Assert.assertEquals(queue.get(i), line(i));
+        }
+
+        /* A value larger than the whole arena so far grows it at once */
+        CompactCircularQueue big = new CompactCircularQueue(4, 1 << 20);
+        String large = new String(new char[10000]).replace('\0', 'x');
+        big.add(large);
+        Assert.assertEquals(big.get(0), large);
+    }
+
+    @Test
+    public void testBytesPerLine() {
+        CompactCircularQueue queue = new CompactCircularQueue(4, 64);
+        Assert.assertEquals(queue.getBytesPerLine(), 0.0);
+
+        queue.add("0123456789");
+        queue.add("0123456789012345678901");
+        Assert.assertEquals(queue.getUsedBytes(), 32);
+        /* The 64 byte arena and 4 table entries, shared by 2 values */
+        Assert.assertEquals(queue.getBytesPerLine(),
+                (64.0 + 4 * CompactCircularQueue.TABLE_ENTRY_SIZE) / 2);
+
+        queue.delete();
+        Assert.assertEquals(queue.getUsedBytes(), 22);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testGetDeletedValue() {
+        CompactCircularQueue queue = new CompactCircularQueue(2);
+        queue.add("a");
+        queue.add("b");
+        queue.add("c");
+
+        queue.get(0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testValueLargerThanArena() {
+        new CompactCircularQueue(2, 4).add("too long");
+    }
+
+    private static String line(long i) {
+        return "request " + i + " served in " + (i % 97) + " ms";
+    }
+
+    private static String value(long i) {
+        return (i % 3 == 0) ? "long record " + i : "r" + i;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ConcurrentCircularQueueTest {
+
+    @Test
+    public void testAddressingMatchesCircularQueue() {
+        ConcurrentCircularQueue<String> q = new ConcurrentCircularQueue<String>(10);
+        Assert.assertTrue(q.isEmpty());
+        Assert.assertFalse(q.add(null));
+
+        for (int i = 0; i < 15; i++) {
+            q.add(Integer.toString(i));
+        }
+
+        Assert.assertTrue(q.isFull());
+        Assert.assertEquals(q.getDataStartIndex(), 5);
+        Assert.assertEquals(q.getDataEndIndex(), 14);
+        Assert.assertEquals(q.get(5), "5");
+        Assert.assertEquals(q.get(14), "14");
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testGetOverwrittenValue() {
+        ConcurrentCircularQueue<String> q = new ConcurrentCircularQueue<String>(4);
+        q.addAll(Arrays.asList("0", "1", "2", "3", "4"));
+        q.get(0);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testGetUnwrittenValue() {
+        ConcurrentCircularQueue<String> q = new ConcurrentCircularQueue<String>(4);
+        q.add("0");
+        q.get(1);
+    }
+
+    @Test
+    public void testCopyRangeAcrossTheWrap() {
+        ConcurrentCircularQueue<String> q = new ConcurrentCircularQueue<String>(5);
+        q.addAll(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7"));
+
+        String[] dest = new String[5];
+        Assert.assertEquals(q.copyRange(3, 8, dest), 5);
+        Assert.assertEquals(dest, new String[] { "3", "4", "5", "6", "7" });
+    }
+
+    @Test(timeOut = 60000)
+    public void testReadersNeverSeeTornValues() throws InterruptedException {
+        final ConcurrentCircularQueue<Integer> q = new ConcurrentCircularQueue<Integer>(64);
+        final int total = 500000;
+
+        List<ValidatingReader> readers = new ArrayList<ValidatingReader>();
+        for (int i = 0; i < 3; i++) {
+            readers.add(new ValidatingReader(q, i));
+        }
+        for (ValidatingReader reader : readers) {
+            reader.start();
+        }
+
+        /* Every value is its own absolute index, so a reader can tell if it got the wrong one */
+        for (int i = 0; i < total; i++) {
+            q.add(i);
+        }
+        for (ValidatingReader reader : readers) {
+            reader.done = true;
+            reader.join();
+            Assert.assertNull(reader.failure);
+            Assert.assertTrue(reader.reads > 0);
+        }
+        Assert.assertEquals(q.getDataEndIndex(), total - 1);
+    }
+
+    private static class ValidatingReader extends Thread {
+
+        private final ConcurrentCircularQueue<Integer> q;
+        private final Random random;
+        private volatile boolean done;
+        private String failure;
+        private long reads;
+
+        ValidatingReader(ConcurrentCircularQueue<Integer> q, long seed) {
+            this.q = q;
+            this.random = new Random(seed);
+        }
+
+        public void run() {
+            Integer[] dest = new Integer[16];
+
+            while (!done && (failure == null)) {
+                long start = q.getDataStartIndex();
+                long end = q.getDataEndIndex();
+                if (end < start) {
+                    continue;
+                }
+
+                long index = start + random.nextInt((int) (end - start + 1));
+                try {
+                    if (q.get(index) != index) {
+                        failure = "get(" + index + ") returned " + q.get(index);
+                    }
+                    long to = Math.min(index + dest.length, end + 1);
+                    q.copyRange(index, to, dest);
+                    for (int i = 0; i < to - index; i++) {
+                        if (dest[i] != index + i) {
+                            failure = "copyRange(" + index + ") returned " + dest[i] + " at " + i;
+                        }
+                    }
+                    reads++;
+                } catch (IndexOutOfBoundsException e) {
+                    /* Overwritten while we read it, which the queue detected */
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class FramedCircularBufferTest {
+
+    private ByteArrayCreator creator;
+
+    @BeforeClass
+    public void setup() {
+        creator = new ByteArrayCreator(7723419834l);
+    }
+
+    @Test
+    public void testOfferAndPoll() {
+        FramedCircularBuffer fb = new FramedCircularBuffer(40);
+        byte[] first = creator.getBytes(10);
+        byte[] second = creator.getBytes(20);
+
+        Assert.assertNull(fb.poll());
+        Assert.assertTrue(fb.offer(first));
+        Assert.assertTrue(fb.offer(ByteBuffer.wrap(second)));
+        Assert.assertFalse(fb.offer(new byte[1]));
+        Assert.assertEquals(fb.size(), 2);
+
+        Assert.assertEquals(fb.poll(), first);
+        Assert.assertEquals(fb.poll(), second);
+        Assert.assertNull(fb.poll());
+        Assert.assertEquals(fb.size(), 0);
+    }
+
+    @Test
+    public void testRecordsWrapAroundBoundary() {
+        FramedCircularBuffer fb = new FramedCircularBuffer(40);
+
+        for (int i = 0; i < 20; i++) {
+            byte[] contents = creator.getBytes(i);
+            Assert.assertTrue(fb.offer(contents, 0, contents.length));
+            Assert.assertEquals(fb.poll(), contents);
+        }
+    }
+
+    @Test
+    public void testEmptyRecord() {
+        FramedCircularBuffer fb = new FramedCircularBuffer(16);
+
+        Assert.assertTrue(fb.offer(new byte[0]));
+        Assert.assertEquals(fb.poll(), new byte[0]);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRecordLargerThanBuffer() {
+        new FramedCircularBuffer(16).offer(new byte[13]);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testOfferAfterClosing() {
+        FramedCircularBuffer fb = new FramedCircularBuffer(16);
+
+        fb.close();
+        fb.offer(new byte[4]);
+    }
+
+    @Test
+    public void testDrainToInBatches() {
+        FramedCircularBuffer fb = new FramedCircularBuffer(256);
+        final List<byte[]> expected = new ArrayList<byte[]>();
+        for (int i = 0; i < 10; i++) {
+            byte[] contents = creator.getBytes(i * 3);
+            expected.add(contents);
+            Assert.assertTrue(fb.offer(contents));
+        }
+
+        final List<byte[]> actual = new ArrayList<byte[]>();
+        RecordHandler handler = new RecordHandler() {
+            public void onRecord(byte[] b, int off, int len) {
+                actual.add(Arrays.copyOfRange(b, off, off + len));
+            }
+        };
+
+        Assert.assertEquals(fb.drainTo(handler, 4), 4);
+        Assert.assertEquals(fb.size(), 6);
+        Assert.assertEquals(fb.drainTo(handler, 100), 6);
+        Assert.assertEquals(fb.drainTo(handler, 100), 0);
+
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(actual.get(i), expected.get(i));
+        }
+    }
+
+    @Test
+    public void testDrainToAcrossWrapAroundBoundary() {
+        FramedCircularBuffer fb = new FramedCircularBuffer(40);
+        final List<byte[]> actual = new ArrayList<byte[]>();
+        RecordHandler handler = new RecordHandler() {
+            public void onRecord(byte[] b, int off, int len) {
+                actual.add(Arrays.copyOfRange(b, off, off + len));
+            }
+        };
+
+        for (int i = 0; i < 20; i++) {
+            byte[] first = creator.getBytes(i % 7);
+            byte[] second = creator.getBytes(i % 5);
+            Assert.assertTrue(fb.offer(first));
+            Assert.assertTrue(fb.offer(second));
+
+            actual.clear();
+            Assert.assertEquals(fb.drainTo(handler, 100), 2);
+            Assert.assertEquals(actual.get(0), first);
+            Assert.assertEquals(actual.get(1), second);
+        }
+    }
+
+    @Test
+    public void testDrainToKeepsRecordsAfterHandlerFails() {
+        FramedCircularBuffer fb = new FramedCircularBuffer(64);
+        byte[] third = creator.getBytes(5);
+        Assert.assertTrue(fb.offer(creator.getBytes(3)));
+        Assert.assertTrue(fb.offer(creator.getBytes(4)));
+        Assert.assertTrue(fb.offer(third));
+
+        RecordHandler handler = new RecordHandler() {
+            public void onRecord(byte[] b, int off, int len) {
+                if (len == 4) {
+                    throw new IllegalStateException("failed on the second record");
+                }
+            }
+        };
+
+        try {
+            fb.drainTo(handler, 100);
+            Assert.fail("the handler's exception was swallowed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(fb.size(), 1);
+        Assert.assertEquals(fb.poll(), third);
+    }
+
+    @Test
+    public void testTimedPollTimesOut() throws InterruptedIOException {
+        FramedCircularBuffer fb = new FramedCircularBuffer(16);
+
+        Assert.assertNull(fb.poll(20, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTimedOfferTimesOut() throws InterruptedIOException {
+        FramedCircularBuffer fb = new FramedCircularBuffer(16);
+
+        Assert.assertTrue(fb.offer(new byte[8], 20, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(fb.offer(new byte[8], 20, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Several writers race to add records while one reader takes them. Every record must come out
+     * whole and each writer's records must keep their order.
+     */
+    @Test
+    public void testRecordsAreNeverSplit() throws Exception {
+        final FramedCircularBuffer fb = new FramedCircularBuffer(512);
+        final int writers = 4;
+        final int perWriter = 2000;
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < writers; i++) {
+            final int id = i;
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        for (int seq = 0; seq < perWriter; seq++) {
+                            /* Vary the length so records straddle the end of the ring */
+                            ByteBuffer record = ByteBuffer.allocate(8 + (seq % 50));
+                            record.putInt(id).putInt(seq);
+                            record.rewind();
+                            while (!fb.offer(record.array(), 10, TimeUnit.SECONDS)) {
+                                // keep trying
+                            }
+                        }
+                    } catch (InterruptedIOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        int[] next = new int[writers];
+        for (int i = 0; i < writers * perWriter; i++) {
+            byte[] record = fb.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(record);
+
+            ByteBuffer bb = ByteBuffer.wrap(record);
+            int id = bb.getInt();
+            int seq = bb.getInt();
+            Assert.assertEquals(seq, next[id]++);
+            Assert.assertEquals(record.length, 8 + (seq % 50));
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(fb.size(), 0);
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class MappedCircularQueueTest {
+
+    private File dir;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        dir = File.createTempFile("pantry", "journals");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @AfterClass
+    public void teardown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testAddAndGet() throws IOException {
+        MappedCircularQueue queue = new MappedCircularQueue(newFile(), 8, 256);
+        Assert.assertFalse(queue.isRecovered());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertFalse(queue.add(null));
+
+        queue.add("first");
+        queue.add("");
+        queue.add("caf\u00e9 \u2603");
+
+        Assert.assertEquals(queue.getDataStartIndex(), 0);
+        Assert.assertEquals(queue.getDataEndIndex(), 2);
+        Assert.assertEquals(queue.get(0), "first");
+        Assert.assertEquals(queue.get(1), "");
+        Assert.assertEquals(queue.get(2), "caf\u00e9 \u2603");
+    }
+
+    @Test
+    public void testReopenServesSameIndexes() throws IOException {
+        File file = newFile();
+        MappedCircularQueue queue = new MappedCircularQueue(file, 5, 64);
+        for (int i = 0; i < 12; i++) {
+            queue.add("line " + i);
+        }
+        queue.force();
+
+        MappedCircularQueue reopened = new MappedCircularQueue(file, 5, 64);
+        Assert.assertTrue(reopened.isRecovered());
+        Assert.assertEquals(reopened.getDataStartIndex(), queue.getDataStartIndex());
+        Assert.assertEquals(reopened.getDataEndIndex(), 11);
+        for (long i = reopened.getDataStartIndex(); i <= reopened.getDataEndIndex(); i++) {
+            Assert.assertEquals(reopened.get(i), "line " + i);
+        }
+
+        /* The reopened journal carries on from where the old one stopped */
+        reopened.add("line 12");
+        Assert.assertEquals(reopened.get(12), "line 12");
+    }
+
+    @Test
+    public void testReopenPastIntegerIndexes() throws IOException {
+        File file = newFile();
+        new MappedCircularQueue(file, 4, 64).force();
+
+        /* Move the indexes of the empty journal past the int range, as years of use would */
+        long start = 3L * Integer.MAX_VALUE;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    MappedCircularQueue.HEADER_SIZE);
+            long sequence = header.getLong(MappedCircularQueue.SEQUENCE_OFFSET) + 1;
+            int cursors = MappedCircularQueue.cursors(sequence);
+            header.putLong(cursors, start);
+            header.putLong(cursors + 8, start - 1);
+            header.putLong(cursors + 16, 0);
+            header.putLong(MappedCircularQueue.SEQUENCE_OFFSET, sequence);
+            header.force();
+        } finally {
+            raf.close();
+        }
+
+        MappedCircularQueue queue = new MappedCircularQueue(file, 4, 64);
+        Assert.assertTrue(queue.isRecovered());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(queue.getDataStartIndex(), start);
+        for (int i = 0; i < 6; i++) {
+            queue.add("line " + i);
+        }
+        queue.force();
+
+        MappedCircularQueue reopened = new MappedCircularQueue(file, 4, 64);
+        Assert.assertEquals(reopened.getDataStartIndex(), start + 2);
+        Assert.assertEquals(reopened.getDataEndIndex(), start + 5);
+        for (int i = 2; i < 6; i++) {
+            Assert.assertEquals(reopened.get(start + i), "line " + i);
+        }
+    }
+
+    @Test
+    public void testReopenWithOtherSizeStartsEmpty() throws IOException {
+        File file = newFile();
+        new MappedCircularQueue(file, 4, 64).add("gone");
+
+        MappedCircularQueue queue = new MappedCircularQueue(file, 8, 64);
+        Assert.assertFalse(queue.isRecovered());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testReopenCorruptHeaderStartsEmpty() throws IOException {
+        File file = newFile();
+        MappedCircularQueue queue = new MappedCircularQueue(file, 4, 64);
+        queue.add("first");
+        queue.add("second");
+        queue.force();
+
+        /* An end index more than the queue's size past the start */
+        MappedByteBuffer mapped = map(file);
+        int cursors = MappedCircularQueue.cursors(mapped.getLong(
+                MappedCircularQueue.SEQUENCE_OFFSET));
+        mapped.putLong(cursors + 8, 9);
+        mapped.force();
+
+        queue = new MappedCircularQueue(file, 4, 64);
+        Assert.assertFalse(queue.isRecovered());
+        Assert.assertTrue(queue.isEmpty());
+        queue.add("first");
+        queue.add("second");
+        queue.force();
+
+        /* A record running past the end of the data region */
+        mapped = map(file);
+        mapped.putLong(MappedCircularQueue.HEADER_SIZE, (60L << 32) | 6);
+        mapped.force();
+
+        queue = new MappedCircularQueue(file, 4, 64);
+        Assert.assertFalse(queue.isRecovered());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testOldestRecordsMakeRoom() throws IOException {
+        MappedCircularQueue queue = new MappedCircularQueue(newFile(), 100, 30);
+        for (int i = 0; i < 50; i++) {
+            String value = (i % 3 == 0) ? "long record " + i : "r" + i;
+            queue.add(value);
+
+            Assert.assertEquals(queue.getDataEndIndex(), i);
+            Assert.assertEquals(queue.get(i), value);
+            for (long j = queue.getDataStartIndex(); j <= i; j++) {
+                Assert.assertEquals(queue.get(j), (j % 3 == 0) ? "long record " + j : "r" + j);
+            }
+        }
+        Assert.assertTrue(queue.getDataStartIndex() > 0);
+    }
+
+    @Test
+    public void testRecordFillingTheWholeRing() throws IOException {
+        MappedCircularQueue queue = new MappedCircularQueue(newFile(), 4, 10);
+        queue.add("abc");
+        queue.add("0123456789");
+
+        Assert.assertEquals(queue.getSize(), 1);
+        Assert.assertEquals(queue.get(1), "0123456789");
+    }
+
+    @Test
+    public void testEmptyRecordsTakeNoRoom() throws IOException {
+        MappedCircularQueue queue = new MappedCircularQueue(newFile(), 8, 10);
+        queue.add("");
+        queue.add("abc");
+        queue.add("");
+        queue.add("defghij");
+
+        Assert.assertEquals(queue.getDataStartIndex(), 0);
+        Assert.assertEquals(queue.getSize(), 4);
+        Assert.assertEquals(queue.get(0), "");
+        Assert.assertEquals(queue.get(3), "defghij");
+
+        queue.add("");
+        Assert.assertEquals(queue.getDataStartIndex(), 0);
+        Assert.assertEquals(queue.get(4), "");
+    }
+
+    @Test
+    public void testRecordsWrapAroundRing() throws IOException {
+        File file = newFile();
+        MappedCircularQueue queue = new MappedCircularQueue(file, 100, 10);
+        queue.add("abcdef");
+        queue.add("gh");
+
+        /* Wraps to the front, skipping the last two bytes, and needs the bytes of "abcdef" */
+        queue.add("ijk");
+        Assert.assertEquals(queue.getDataStartIndex(), 1);
+
+        /* Fills the ring up to the bytes of "gh", then needs them and the skipped ones */
+        queue.add("lm");
+        queue.add("n");
+        Assert.assertEquals(queue.getDataStartIndex(), 1);
+        queue.add("o");
+        Assert.assertEquals(queue.getDataStartIndex(), 2);
+        queue.force();
+
+        /* The reopened journal knows how much of the ring is in use */
+        MappedCircularQueue reopened = new MappedCircularQueue(file, 100, 10);
+        reopened.add("pqr");
+        Assert.assertEquals(reopened.getDataStartIndex(), 2);
+        reopened.add("s");
+        Assert.assertEquals(reopened.getDataStartIndex(), 3);
+
+        String[] expected = { "lm", "n", "o", "pqr", "s" };
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(reopened.get(3 + i), expected[i]);
+        }
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testGetDeletedValue() throws IOException {
+        MappedCircularQueue queue = new MappedCircularQueue(newFile(), 2, 64);
+        queue.add("a");
+        queue.add("b");
+        queue.add("c");
+
+        queue.get(0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testValueLargerThanRing() throws IOException {
+        new MappedCircularQueue(newFile(), 2, 4).add("too long");
+    }
+
+    private File newFile() throws IOException {
+        return File.createTempFile("journal", ".ring", dir);
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+}
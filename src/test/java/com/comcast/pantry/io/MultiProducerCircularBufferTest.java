@@ -0,0 +1,185 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.Reporter;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class MultiProducerCircularBufferTest {
+
+    private static final int RECORD_SIZE = 64;
+    private static final int RECORDS_PER_WRITER = 20000;
+
+    private ByteArrayCreator creator;
+
+    @BeforeClass
+    public void setup() {
+        creator = new ByteArrayCreator(982734234l);
+    }
+
+    @Test
+    public void testBufferThatOverflowsBoundary() throws InterruptedIOException {
+        MultiProducerCircularBuffer cb = new MultiProducerCircularBuffer(40);
+
+        for (int i = 0; i < 5; i++) {
+            byte[] contents = creator.getBytes(35);
+            byte[] actual = new byte[contents.length];
+            cb.write(contents);
+            Assert.assertEquals(cb.getUsed(), 35);
+            cb.read(actual);
+
+            Assert.assertEquals(contents, actual);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRecordLargerThanBuffer() throws InterruptedIOException {
+        new MultiProducerCircularBuffer(32).write(creator.getBytes(33));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testClosingBeforeWriting() throws InterruptedIOException {
+        MultiProducerCircularBuffer cb = new MultiProducerCircularBuffer(32);
+
+        cb.close();
+        cb.write(creator.getBytes(8));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testClosingWhileWaitingForSpace() throws InterruptedIOException {
+        MultiProducerCircularBuffer cb = new MultiProducerCircularBuffer(32);
+
+        cb.write(creator.getBytes(20));
+        new Closer(cb, 50).start();
+        cb.write(creator.getBytes(20));
+    }
+
+    @Test
+    public void testClosingBeforeReading() throws InterruptedIOException {
+        MultiProducerCircularBuffer cb = new MultiProducerCircularBuffer(32);
+
+        cb.write(creator.getBytes(16));
+        cb.close();
+
+        Assert.assertEquals(cb.read(new byte[16]), -1);
+    }
+
+    @Test
+    public void testClosingWhileWaitingForFirstRead() throws InterruptedException {
+        MultiProducerCircularBuffer cb = new MultiProducerCircularBuffer(32);
+
+        Closer closer = new Closer(cb, 100);
+        Reader reader = new Reader(cb, 32);
+
+        reader.start();
+        closer.start();
+
+        reader.join();
+        closer.join();
+
+        Assert.assertEquals(reader.getSize(), -1);
+    }
+
+    @Test
+    public void testReadPartial() throws InterruptedIOException {
+        MultiProducerCircularBuffer cb = new MultiProducerCircularBuffer(35, true);
+        byte[] contents = creator.getBytes(16);
+        cb.write(contents);
+
+        byte[] read = new byte[32];
+        Assert.assertEquals(cb.read(read), 16);
+    }
+
+    @DataProvider(name = "writerCounts")
+    public Object[][] writerCounts() {
+        return new Object[][] { { 1 }, { 2 }, { 4 }, { 8 } };
+    }
+
+    /**
+     * Every writer writes numbered records filled with its own id. The reader checks that every
+     * record it sees is made up of a single writer's bytes, that each writer's records arrive in
+     * order and that nothing was lost. The throughput for each writer count is reported so the
+     * scaling can be compared from 1 to N writers.
+     */
+    @Test(dataProvider = "writerCounts")
+    public void testThroughputScaling(int writers) throws Exception {
+        final MultiProducerCircularBuffer cb = new MultiProducerCircularBuffer(64 * 1024);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < writers; i++) {
+            final int id = i;
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        byte[] record = new byte[RECORD_SIZE];
+                        for (int seq = 0; seq < RECORDS_PER_WRITER; seq++) {
+                            ByteBuffer bb = ByteBuffer.wrap(record);
+                            bb.putInt(id).putInt(seq);
+                            while (bb.hasRemaining()) {
+                                bb.put((byte) id);
+                            }
+                            cb.write(record);
+                        }
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            });
+        }
+
+        long begin = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        int[] next = new int[writers];
+        byte[] record = new byte[RECORD_SIZE];
+        for (int i = 0; i < writers * RECORDS_PER_WRITER; i++) {
+            Assert.assertEquals(cb.read(record), RECORD_SIZE);
+
+            ByteBuffer bb = ByteBuffer.wrap(record);
+            int id = bb.getInt();
+            int seq = bb.getInt();
+            Assert.assertEquals(seq, next[id]++, "writer " + id + " records out of order");
+            while (bb.hasRemaining()) {
+                Assert.assertEquals(bb.get(), (byte) id, "record interleaved with another");
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(failures.isEmpty(), failures.toString());
+        Assert.assertEquals(cb.getUsed(), 0);
+
+        long bytes = (long) writers * RECORDS_PER_WRITER * RECORD_SIZE;
+        Reporter.log(String.format("%d writer(s): %.1f MB/s", writers,
+                (bytes / (1024.0 * 1024.0)) / (elapsed / 1e9)), true);
+    }
+}
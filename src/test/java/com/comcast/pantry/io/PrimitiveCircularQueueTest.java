@@ -0,0 +1,144 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PrimitiveCircularQueueTest {
+
+    @Test
+    public void testAbsoluteIndexesSurviveWrapping() {
+        LongCircularQueue q = new LongCircularQueue(10);
+        for (long i = 0; i < 15; i++) {
+            q.add(1000 + i);
+        }
+
+        Assert.assertTrue(q.isFull());
+        Assert.assertEquals(q.getDataStartIndex(), 5);
+        Assert.assertEquals(q.getDataEndIndex(), 14);
+        for (int i = 5; i < 15; i++) {
+            Assert.assertEquals(q.get(i), 1000L + i);
+        }
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testGetOverwrittenValue() {
+        IntCircularQueue q = new IntCircularQueue(4);
+        for (int i = 0; i < 6; i++) {
+            q.add(i);
+        }
+        q.get(1);
+    }
+
+    @Test
+    public void testAggregatesAcrossTheWrap() {
+        LongCircularQueue q = new LongCircularQueue(8);
+        long[] values = { 9, 3, 7, 1, 8, 2, 6, 4, 5, 10, 0 };
+        for (long value : values) {
+            q.add(value);
+        }
+
+        /* Indexes 3 to 10 hold 1, 8, 2, 6, 4, 5, 10, 0 and wrap around the end of the storage */
+        Assert.assertEquals(q.sum(3, 10), 36);
+        Assert.assertEquals(q.min(3, 10), 0);
+        Assert.assertEquals(q.max(3, 10), 10);
+        Assert.assertEquals(q.sum(5, 5), 2);
+        Assert.assertEquals(q.min(6, 8), 4);
+        Assert.assertEquals(q.max(6, 8), 6);
+    }
+
+    @Test
+    public void testPercentiles() {
+        IntCircularQueue q = new IntCircularQueue(100);
+        for (int i = 100; i >= 1; i--) {
+            q.add(i);
+        }
+
+        Assert.assertEquals(q.percentile(0, 99, 0), 1);
+        Assert.assertEquals(q.percentile(0, 99, 50), 50);
+        Assert.assertEquals(q.percentile(0, 99, 99), 99);
+        Assert.assertEquals(q.percentile(0, 99, 99.5), 100);
+        Assert.assertEquals(q.percentile(0, 99, 100), 100);
+
+        /* Only the last ten values, 10 down to 1 */
+        Assert.assertEquals(q.percentile(90, 99, 90), 9);
+    }
+
+    @Test
+    public void testIntSumDoesNotOverflow() {
+        IntCircularQueue q = new IntCircularQueue(4);
+        for (int i = 0; i < 4; i++) {
+            q.add(Integer.MAX_VALUE);
+        }
+        Assert.assertEquals(q.sum(0, 3), 4L * Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testDoubleAggregates() {
+        DoubleCircularQueue q = new DoubleCircularQueue(3);
+        q.add(0.5);
+        q.add(-1.25);
+        q.add(2.0);
+        q.add(4.0);
+
+        Assert.assertEquals(q.sum(1, 3), 4.75, 0.0);
+        Assert.assertEquals(q.min(1, 3), -1.25, 0.0);
+        Assert.assertEquals(q.max(1, 3), 4.0, 0.0);
+        Assert.assertEquals(q.percentile(1, 3, 50), 2.0, 0.0);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testRangeOutOfTheQueue() {
+        LongCircularQueue q = new LongCircularQueue(4);
+        for (int i = 0; i < 6; i++) {
+            q.add(i);
+        }
+        q.sum(1, 5);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testRangeBackwards() {
+        LongCircularQueue q = new LongCircularQueue(4);
+        q.add(1);
+        q.add(2);
+        q.min(1, 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        DoubleCircularQueue q = new DoubleCircularQueue(4);
+        q.add(1);
+        q.percentile(0, 0, 101);
+    }
+
+    @Test
+    public void testDeleteFromTheStart() {
+        LongCircularQueue q = new LongCircularQueue(4);
+        q.add(1);
+        q.add(2);
+        q.add(3);
+
+        Assert.assertTrue(q.delete());
+        Assert.assertEquals(q.getDataStartIndex(), 1);
+        Assert.assertEquals(q.sum(1, 2), 5);
+        Assert.assertTrue(q.delete());
+        Assert.assertTrue(q.delete());
+        Assert.assertTrue(q.isEmpty());
+        Assert.assertFalse(q.delete());
+    }
+}
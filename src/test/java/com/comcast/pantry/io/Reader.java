@@ -20,12 +20,12 @@ import java.io.InterruptedIOException;
 
 public class Reader extends Thread {
 
-    private CircularBuffer cb;
+    private ByteRing cb;
     private byte[] contents;
     private int size;
     private Thread next;
 
-    public Reader(CircularBuffer cb, int size) {
+    public Reader(ByteRing cb, int size) {
         this.cb = cb;
         this.contents = new byte[size];
         this.next = null;
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class SearchableCircularQueueTest {
+
+    @DataProvider(name = "indexed")
+    public Object[][] indexed() {
+        return new Object[][] { { false }, { true } };
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testSubstringSearch(boolean indexed) {
+        SearchableCircularQueue q = new SearchableCircularQueue(10, indexed);
+        Assert.assertEquals(q.isIndexed(), indexed);
+        Assert.assertEquals(q.search("error"), new long[0]);
+
+        q.addAll(Arrays.asList("started", "error: disk full", "retrying", "error: error again",
+                "done"));
+
+        Assert.assertEquals(q.search("error"), new long[] { 1, 3 });
+        Assert.assertEquals(q.search("error", 2, 4), new long[] { 3 });
+        Assert.assertEquals(q.search("ing"), new long[] { 2 });
+        Assert.assertEquals(q.search("missing"), new long[0]);
+        /* Too short to use the index */
+        Assert.assertEquals(q.search("d"), new long[] { 0, 1, 4 });
+        Assert.assertEquals(q.search(""), new long[] { 0, 1, 2, 3, 4 });
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testRegexSearch(boolean indexed) {
+        SearchableCircularQueue q = new SearchableCircularQueue(10, indexed);
+        q.addAll(Arrays.asList("GET /a 200", "GET /b 404", "POST /c 500", "GET /d 503"));
+
+        Assert.assertEquals(q.search(Pattern.compile(" 5\\d\\d$")), new long[] { 2, 3 });
+        Assert.assertEquals(q.search(Pattern.compile("^GET"), 1, 3), new long[] { 1, 3 });
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testSearchAfterLinesAreDeleted(boolean indexed) {
+        SearchableCircularQueue q = new SearchableCircularQueue(50, indexed);
+        SearchableCircularQueue check = new SearchableCircularQueue(50);
+        Random random = new Random(8213L);
+        String[] words = { "alpha", "beta", "gamma", "delta", "alphabet", "bet" };
+
+        for (int i = 0; i < 500; i++) {
+            StringBuilder line = new StringBuilder();
+            for (int w = random.nextInt(4); w >= 0; w--) {
+                line.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            q.add(line.toString());
+            check.add(line.toString());
+            if (random.nextInt(10) == 0) {
+                q.delete();
+                check.delete();
+            }
+
+            for (String word : words) {
+                Assert.assertEquals(q.search(word), scan(check, word), word + " after " + i);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testSearchOutsideTheQueue() {
+        SearchableCircularQueue q = new SearchableCircularQueue(2, true);
+        q.addAll(Arrays.asList("a", "b", "c"));
+        q.search("a", 0, 2);
+    }
+
+    private static long[] scan(CircularQueue<String> q, String substring) {
+        List<Long> matches = new ArrayList<Long>();
+        for (long i = q.getDataStartIndex(); i <= q.getDataEndIndex(); i++) {
+            if (q.get(i).contains(substring)) {
+                matches.add(i);
+            }
+        }
+        long[] result = new long[matches.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matches.get(i);
+        }
+        return result;
+    }
+}
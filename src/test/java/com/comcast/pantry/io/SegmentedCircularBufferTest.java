@@ -0,0 +1,153 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.InterruptedIOException;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class SegmentedCircularBufferTest {
+
+    private ByteArrayCreator creator;
+
+    @BeforeClass
+    public void setup() {
+        creator = new ByteArrayCreator(5532987123l);
+    }
+
+    @Test
+    public void testDataAcrossChunksAndAroundTheRing() throws InterruptedIOException {
+        ChunkPool pool = new ChunkPool(16, 8);
+        SegmentedCircularBuffer cb = new SegmentedCircularBuffer(40, pool);
+
+        for (int i = 0; i < 10; i++) {
+            byte[] contents = creator.getBytes(35);
+            byte[] actual = new byte[contents.length];
+            cb.write(contents);
+            Assert.assertEquals(cb.getUsed(), 35);
+            cb.read(actual);
+
+            Assert.assertEquals(actual, contents);
+        }
+    }
+
+    @Test
+    public void testChunksGoBackToThePool() throws InterruptedIOException {
+        ChunkPool pool = new ChunkPool(16, 8);
+        SegmentedCircularBuffer cb = new SegmentedCircularBuffer(64, pool);
+
+        cb.write(creator.getBytes(40));
+        Assert.assertEquals(cb.getChunkCount(), 3);
+        Assert.assertEquals(pool.getAllocatedCount(), 3);
+
+        cb.read(new byte[32]);
+        Assert.assertEquals(cb.getChunkCount(), 1);
+        Assert.assertEquals(pool.getPooledCount(), 2);
+
+        /* The next chunks are reused rather than allocated */
+        cb.write(creator.getBytes(24));
+        Assert.assertEquals(pool.getAllocatedCount(), 3);
+
+        cb.close();
+        Assert.assertEquals(pool.getPooledCount(), 3);
+    }
+
+    @Test
+    public void testBuffersShareOnePool() throws InterruptedIOException {
+        ChunkPool pool = new ChunkPool(16, 8);
+        SegmentedCircularBuffer first = new SegmentedCircularBuffer(64, pool);
+        SegmentedCircularBuffer second = new SegmentedCircularBuffer(64, pool);
+
+        /* The chunks the first buffer has read through are all the second buffer needs */
+        first.write(creator.getBytes(32));
+        first.read(new byte[32]);
+        second.write(creator.getBytes(32));
+
+        Assert.assertEquals(pool.getAllocatedCount(), 2);
+        Assert.assertEquals(first.getChunkCount(), 0);
+        Assert.assertEquals(second.getChunkCount(), 2);
+    }
+
+    @Test
+    public void testCapacityBeyondTwoGigabytes() throws InterruptedIOException {
+        long capacity = 3L * 1024 * 1024 * 1024;
+        SegmentedCircularBuffer cb = new SegmentedCircularBuffer(capacity,
+                new ChunkPool(1024 * 1024, 4));
+        Assert.assertEquals(cb.getCapacity(), capacity);
+
+        /* Memory is only taken as data is written */
+        byte[] contents = creator.getBytes(100);
+        cb.write(contents);
+        Assert.assertEquals(cb.getChunkCount(), 1);
+
+        byte[] actual = new byte[100];
+        cb.read(actual);
+        Assert.assertEquals(actual, contents);
+    }
+
+    @Test
+    public void testLargeData() throws InterruptedException {
+        SegmentedCircularBuffer cb = new SegmentedCircularBuffer(32, new ChunkPool(8, 8));
+
+        byte[] contents = creator.getBytes(4096);
+        Writer writer = new Writer(cb, contents);
+        Reader reader = new Reader(cb, 4096);
+
+        writer.start();
+        reader.start();
+
+        writer.join();
+        reader.join();
+
+        Assert.assertEquals(reader.getSize(), 4096);
+        Assert.assertEquals(reader.getContents(), contents);
+    }
+
+    @Test
+    public void testReadPartial() throws InterruptedIOException {
+        SegmentedCircularBuffer cb = new SegmentedCircularBuffer(35, new ChunkPool(8, 8), true);
+        cb.write(creator.getBytes(16));
+
+        Assert.assertEquals(cb.read(new byte[32]), 16);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testClosingWhileWriting() throws InterruptedIOException {
+        SegmentedCircularBuffer cb = new SegmentedCircularBuffer(32, new ChunkPool(8, 8));
+
+        new Closer(cb, 50).start();
+        cb.write(creator.getBytes(50));
+    }
+
+    @Test
+    public void testClosingWhileWaitingForFirstRead() throws InterruptedException {
+        SegmentedCircularBuffer cb = new SegmentedCircularBuffer(32, new ChunkPool(8, 8));
+
+        Closer closer = new Closer(cb, 100);
+        Reader reader = new Reader(cb, 32);
+
+        reader.start();
+        closer.start();
+
+        reader.join();
+        closer.join();
+
+        Assert.assertEquals(reader.getSize(), -1);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class SpscCircularBufferTest {
+
+    private ByteArrayCreator creator;
+
+    @BeforeClass
+    public void setup() {
+        creator = new ByteArrayCreator(7234598234l);
+    }
+
+    @Test
+    public void testBufferThatFitsAll() throws InterruptedIOException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(128);
+
+        byte[] contents = creator.getBytes(100);
+        byte[] actual = new byte[contents.length];
+        cb.write(contents);
+        Assert.assertEquals(cb.getUsed(), 100);
+        cb.read(actual);
+
+        Assert.assertEquals(contents, actual);
+        Assert.assertEquals(cb.getUsed(), 0);
+    }
+
+    @Test
+    public void testBufferThatOverflowsBoundary() throws InterruptedIOException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(40);
+
+        for (int i = 0; i < 5; i++) {
+            byte[] contents = creator.getBytes(35);
+            byte[] actual = new byte[contents.length];
+            cb.write(contents);
+            cb.read(actual);
+
+            Assert.assertEquals(contents, actual);
+        }
+    }
+
+    @Test
+    public void testLargeData() throws InterruptedException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(32);
+
+        byte[] contents = creator.getBytes(1024 * 1024);
+        Writer writer = new Writer(cb, contents);
+        Reader reader = new Reader(cb, contents.length);
+
+        writer.start();
+        reader.start();
+
+        writer.join();
+        reader.join();
+
+        Assert.assertEquals(reader.getSize(), contents.length);
+        Assert.assertEquals(reader.getContents(), contents);
+    }
+
+    @Test
+    public void testFillBeforeReading() throws InterruptedException, InterruptedIOException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(32);
+
+        byte[] contents = creator.getBytes(32);
+        byte[] contents2 = creator.getBytes(32);
+        cb.write(contents);
+
+        Writer writer = new Writer(cb, contents2);
+        Reader reader = new Reader(cb, 64);
+        writer.start();
+        reader.start();
+
+        writer.join();
+        reader.join();
+
+        Assert.assertEquals(reader.getSize(), 64);
+
+        byte[] expected = new byte[64];
+        System.arraycopy(contents, 0, expected, 0, 32);
+        System.arraycopy(contents2, 0, expected, 32, 32);
+        Assert.assertEquals(reader.getContents(), expected);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testClosingBeforeWriting() throws InterruptedIOException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(32);
+
+        cb.close();
+        cb.write(creator.getBytes(8));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testClosingWhileWriting() throws InterruptedIOException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(32);
+
+        Closer closer = new Closer(cb, 50);
+        closer.start();
+        cb.write(creator.getBytes(50));
+    }
+
+    @Test
+    public void testClosingBeforeReading() throws InterruptedIOException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(32);
+
+        cb.write(creator.getBytes(16));
+        cb.close();
+
+        Assert.assertEquals(cb.read(new byte[16]), -1);
+    }
+
+    @Test
+    public void testClosingWhileReading() throws InterruptedException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(32);
+
+        byte[] contents = creator.getBytes(16);
+        Writer writer = new Writer(cb, contents);
+        Closer closer = new Closer(cb, 100);
+        writer.setNext(closer);
+
+        Reader reader = new Reader(cb, 32);
+
+        writer.start();
+        reader.start();
+
+        writer.join();
+        reader.join();
+
+        Assert.assertEquals(reader.getSize(), 16);
+        Assert.assertEquals(Arrays.copyOf(reader.getContents(), 16), contents);
+    }
+
+    @Test
+    public void testClosingWhileWaitingForFirstRead() throws InterruptedException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(32);
+
+        Closer closer = new Closer(cb, 100);
+        Reader reader = new Reader(cb, 32);
+
+        reader.start();
+        closer.start();
+
+        reader.join();
+        closer.join();
+
+        Assert.assertEquals(reader.getSize(), -1);
+    }
+
+    @Test
+    public void testReadPartial() throws InterruptedIOException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(35, true);
+        byte[] contents = creator.getBytes(16);
+        cb.write(contents);
+
+        byte[] read = new byte[32];
+        int n = cb.read(read);
+
+        Assert.assertEquals(n, 16);
+        Assert.assertEquals(Arrays.copyOf(read, 16), contents);
+    }
+
+    @Test(expectedExceptions = InterruptedIOException.class)
+    public void testInterruptWhileReading() throws InterruptedIOException {
+        SpscCircularBuffer cb = new SpscCircularBuffer(32);
+
+        Thread.currentThread().interrupt();
+        cb.read(new byte[8]);
+    }
+
+    @Test
+    public void testCircularBufferInputStream() throws InterruptedException {
+        List<String> lines = Arrays.asList("kevin", "lyle", "pearson");
+        SpscCircularBuffer cb = new SpscCircularBuffer(15);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new CircularBufferInputStream(cb)));
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new CircularBufferOutputStream(cb)));
+
+        BufferedWriterThread bwt = new BufferedWriterThread(writer, lines);
+        BufferedReaderThread brt = new BufferedReaderThread(reader);
+        Closer closer = new Closer(cb, 3000);
+
+        bwt.start();
+        brt.start();
+        closer.start();
+        bwt.join();
+        brt.join();
+        closer.join();
+
+        Assert.assertEquals(brt.getLines(), lines);
+    }
+}
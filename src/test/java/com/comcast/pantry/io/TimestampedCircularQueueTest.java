@@ -0,0 +1,104 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.comcast.pantry.io;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.comcast.pantry.io.TimestampedCircularQueue.Window;
+
+public class TimestampedCircularQueueTest {
+
+    @Test
+    public void testIndexAtOrAfter() {
+        TimestampedCircularQueue<String> q = new TimestampedCircularQueue<String>(10);
+        Assert.assertEquals(q.indexAtOrAfter(0), 0);
+
+        q.add("a", 1000);
+        q.add("b", 2000);
+        q.add("c", 2000);
+        q.add("d", 3000);
+
+        Assert.assertEquals(q.indexAtOrAfter(0), 0);
+        Assert.assertEquals(q.indexAtOrAfter(1000), 0);
+        Assert.assertEquals(q.indexAtOrAfter(1001), 1);
+        Assert.assertEquals(q.indexAtOrAfter(2000), 1);
+        Assert.assertEquals(q.indexAtOrAfter(3000), 3);
+        Assert.assertEquals(q.indexAtOrAfter(3001), 4);
+        Assert.assertEquals(q.getTimestamp(2), 2000);
+    }
+
+    @Test
+    public void testRangeAfterTheQueueWraps() {
+        TimestampedCircularQueue<String> q = new TimestampedCircularQueue<String>(5);
+        for (int i = 0; i < 12; i++) {
+            q.add("line " + i, 10000 + i * 1000);
+        }
+
+        Window window = q.range(15000, 17000);
+        Assert.assertEquals(window.getFromIndex(), 7);
+        Assert.assertEquals(window.getToIndex(), 8);
+
+        window = q.range(18000, 20500);
+        Assert.assertEquals(window.getFromIndex(), 8);
+        Assert.assertEquals(window.getToIndex(), 11);
+        Assert.assertEquals(window.getSize(), 3);
+
+        String[] dest = new String[window.getSize()];
+        q.copyRange(window.getFromIndex(), window.getToIndex(), dest);
+        Assert.assertEquals(dest, new String[] { "line 8", "line 9", "line 10" });
+
+        Assert.assertEquals(q.range(0, Long.MAX_VALUE).getSize(), 5);
+        Assert.assertTrue(q.range(30000, 40000).isEmpty());
+        Assert.assertTrue(q.range(19000, 18000).isEmpty());
+    }
+
+    @Test
+    public void testTimestampsNeverGoBackwards() {
+        TimestampedCircularQueue<String> q = new TimestampedCircularQueue<String>(5);
+        q.add("a", 5000);
+        q.add("b", 4000);
+        q.add("c", 6000);
+
+        Assert.assertEquals(q.getTimestamp(1), 5000);
+        Assert.assertEquals(q.range(5000, 5000).getSize(), 2);
+    }
+
+    @Test
+    public void testAddStampsCurrentTime() {
+        TimestampedCircularQueue<String> q = new TimestampedCircularQueue<String>(5);
+        long before = System.currentTimeMillis();
+        q.add("a");
+        q.addAll(Arrays.asList("b", null, "c"));
+        long after = System.currentTimeMillis();
+
+        Assert.assertEquals(q.getDataEndIndex(), 2);
+        Assert.assertEquals(q.range(before, after).getSize(), 3);
+        Assert.assertFalse(q.add(null, after));
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testTimestampOfDeletedValue() {
+        TimestampedCircularQueue<String> q = new TimestampedCircularQueue<String>(2);
+        q.add("a", 1);
+        q.add("b", 2);
+        q.add("c", 3);
+        q.getTimestamp(0);
+    }
+}
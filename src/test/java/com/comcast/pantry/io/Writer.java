@@ -20,11 +20,11 @@ import java.io.InterruptedIOException;
 
 public class Writer extends Thread {
 
-    private CircularBuffer cb;
+    private ByteRing cb;
     private byte[] contents;
     private Thread next;
 
-    public Writer(CircularBuffer cb, byte[] contents) {
+    public Writer(ByteRing cb, byte[] contents) {
         this.cb = cb;
         this.contents = contents;
         this.next = null;